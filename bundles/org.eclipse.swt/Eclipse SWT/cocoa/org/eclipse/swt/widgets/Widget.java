@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -875,10 +875,7 @@ public Object getData (String key) {
 	if (key == null) error (SWT.ERROR_NULL_ARGUMENT);
 	if (key.equals(IS_ACTIVE)) return new Boolean(isActive());
 	if ((state & KEYED_DATA) != 0) {
-		Object [] table = (Object []) data;
-		for (int i=1; i<table.length; i+=2) {
-			if (key.equals (table [i])) return table [i+1];
-		}
+		return KeyedData.get ((Object []) data, key);
 	}
 	return null;
 }
@@ -1609,44 +1606,18 @@ public void setData (String key, Object value) {
 		setOpenGLContext(value);
 		return;
 	}
-	int index = 1;
-	Object [] table = null;
 	if ((state & KEYED_DATA) != 0) {
-		table = (Object []) data;
-		while (index < table.length) {
-			if (key.equals (table [index])) break;
-			index += 2;
-		}
-	}
-	if (value != null) {
-		if ((state & KEYED_DATA) != 0) {
-			if (index == table.length) {
-				Object [] newTable = new Object [table.length + 2];
-				System.arraycopy (table, 0, newTable, 0, table.length);
-				data = table = newTable;
-			}
+		Object [] table = KeyedData.put ((Object []) data, key, value);
+		if (table.length == 1) {
+			data = table [0];
+			state &= ~KEYED_DATA;
 		} else {
-			table = new Object [3];
-			table [0] = data;
 			data = table;
-			state |= KEYED_DATA;
 		}
-		table [index] = key;
-		table [index + 1] = value;
 	} else {
-		if ((state & KEYED_DATA) != 0) {
-			if (index != table.length) {
-				int length = table.length - 2;
-				if (length == 1) {
-					data = table [0];
-					state &= ~KEYED_DATA;
-				} else {
-					Object [] newTable = new Object [length];
-					System.arraycopy (table, 0, newTable, 0, index);
-					System.arraycopy (table, index + 2, newTable, index, length - index);
-					data = newTable;
-				}
-			}
+		if (value != null) {
+			data = KeyedData.put (new Object [] {data}, key, value);
+			state |= KEYED_DATA;
 		}
 	}
 	if (key.equals(SWT.SKIN_CLASS) || key.equals(SWT.SKIN_ID)) this.reskin(SWT.ALL);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -4028,6 +4028,49 @@ public class SWT {
 	 */
 	public static final int TRANSPARENCY_PIXEL = 1 << 2;
 
+	/**
+	 * Image resampling filter constant indicating that each pixel is
+	 * the average of the source pixels it covers, which is suited to
+	 * reducing images (value is 1).
+	 * 
+	 * @see org.eclipse.swt.graphics.ImageData#scaledTo(int, int, int)
+	 * 
+	 * @since 3.104
+	 */
+	public static final int FILTER_BOX = 1;
+
+	/**
+	 * Image resampling filter constant indicating that each pixel is
+	 * interpolated linearly from its nearest source pixels (value is 2).
+	 * 
+	 * @see org.eclipse.swt.graphics.ImageData#scaledTo(int, int, int)
+	 * 
+	 * @since 3.104
+	 */
+	public static final int FILTER_BILINEAR = 2;
+
+	/**
+	 * Image resampling filter constant indicating that each pixel is
+	 * interpolated with a cubic spline from its nearest 4 by 4 source
+	 * pixels (value is 3).
+	 * 
+	 * @see org.eclipse.swt.graphics.ImageData#scaledTo(int, int, int)
+	 * 
+	 * @since 3.104
+	 */
+	public static final int FILTER_BICUBIC = 3;
+
+	/**
+	 * Image resampling filter constant indicating that each pixel is
+	 * interpolated with a three lobed Lanczos filter, which gives the
+	 * sharpest results (value is 4).
+	 * 
+	 * @see org.eclipse.swt.graphics.ImageData#scaledTo(int, int, int)
+	 * 
+	 * @since 3.104
+	 */
+	public static final int FILTER_LANCZOS = 4;
+
 	/**
 	 * The character movement type (value is 1&lt;&lt;0).
 	 * This constant is used to move a text offset over a character.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -1158,6 +1158,45 @@ public ImageData scaledTo(int width, int height) {
 	return dest;
 }
 
+/**
+ * Returns a copy of the receiver which has been stretched or
+ * shrunk to the specified size, using the specified filter to
+ * compute the new pixels. If either the width or height is
+ * negative, the resulting image will be inverted in the
+ * associated axis.
+ * <p>
+ * When the filter is <code>SWT.NONE</code>, the result is the same
+ * as the one of <code>scaledTo(int, int)</code>. Otherwise, since
+ * the new pixels are blends of the pixels of the receiver, the
+ * result is a 24 bit direct image. Its alpha data or transparency
+ * mask, if any, is resampled as well; a transparent pixel is
+ * converted to a transparency mask.
+ * </p>
+ *
+ * @param width the width of the new ImageData
+ * @param height the height of the new ImageData
+ * @param filter the resampling filter, one of <code>SWT.NONE</code>,
+ * <code>SWT.FILTER_BOX</code>, <code>SWT.FILTER_BILINEAR</code>,
+ * <code>SWT.FILTER_BICUBIC</code> or <code>SWT.FILTER_LANCZOS</code>
+ * @return a scaled copy of the image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the width or height is zero, or the filter is not valid</li>
+ * </ul>
+ * 
+ * @see SWT#FILTER_BOX
+ * @see SWT#FILTER_BILINEAR
+ * @see SWT#FILTER_BICUBIC
+ * @see SWT#FILTER_LANCZOS
+ * 
+ * @since 3.104
+ */
+public ImageData scaledTo(int width, int height, int filter) {
+	if (filter == SWT.NONE) return scaledTo(width, height);
+	if (width == 0 || height == 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	return new ImageDataResampler(this, width, height, filter).resample();
+}
+
 /**
  * Sets the alpha value at offset <code>x</code> in
  * scanline <code>y</code> in the receiver's alpha data.
@@ -3440,6 +3479,159 @@ static void blit(int op,
 	}
 }
 
+/**
+ * Converts a whole image into 32-bit pixels that hold the alpha, red,
+ * green and blue channels in one byte each, with the color channels
+ * premultiplied by the alpha. When the image has no transparency the
+ * alpha bytes are set to 0xFF.
+ * <p>
+ * This is a fast path for the common source layouts: direct palette
+ * images of depth 24 or 32 whose channels each fill one byte, and
+ * indexed images of depth 1, 2, 4 or 8. The layout is examined once,
+ * the pixels are then copied by byte offsets or through a color
+ * lookup table, and the transparency mask, transparent pixel,
+ * global alpha or alpha data is applied in the same pass. When the
+ * layout is not handled, nothing is written and <code>false</code>
+ * is returned so that the caller can fall back to <code>blit</code>.
+ * </p>
+ *
+ * @param image the source image
+ * @param destData the destination byte array, with room for <code>destStride * image.height</code> bytes
+ * @param destStride the destination number of bytes per line
+ * @param destOrder the byte order of the destination pixels: MSB_FIRST stores
+ *        alpha, red, green, blue in that order, LSB_FIRST stores blue, green, red, alpha
+ * @return <code>true</code> if the image was converted, and <code>false</code> otherwise
+ */
+static boolean blitPremultiplied(ImageData image, byte[] destData, int destStride, int destOrder) {
+	final int width = image.width, height = image.height, depth = image.depth;
+	final PaletteData palette = image.palette;
+
+	/*** Prepare source-related data ***/
+	int[] colors = null;
+	int sbpp = 0, sro = 0, sgo = 0, sbo = 0;
+	if (palette.isDirect) {
+		if (depth != 24 && depth != 32) return false;
+		sbpp = depth / 8;
+		sro = getByteOffset(palette.redMask, sbpp);
+		sgo = getByteOffset(palette.greenMask, sbpp);
+		sbo = getByteOffset(palette.blueMask, sbpp);
+		if (sro == -1 || sgo == -1 || sbo == -1) return false;
+	} else {
+		if (depth != 1 && depth != 2 && depth != 4 && depth != 8) return false;
+		RGB[] rgbs = palette.colors;
+		colors = new int[1 << depth];
+		int length = Math.min(rgbs.length, colors.length);
+		for (int i = 0; i < length; i++) {
+			RGB rgb = rgbs[i];
+			if (rgb == null) continue;
+			colors[i] = (rgb.red << 16) | (rgb.green << 8) | rgb.blue;
+		}
+	}
+	final byte[] srcData = image.data;
+	final int srcStride = image.bytesPerLine;
+
+	/*** Prepare alpha-related data ***/
+	int alphaMode = ALPHA_OPAQUE, transparentPixel = -1, maskStride = 0;
+	byte[] alphaData = null;
+	if (image.maskData != null) {
+		alphaMode = ALPHA_MASK_PACKED;
+		alphaData = image.maskData;
+		maskStride = (((width + 7) / 8) + (image.maskPad - 1)) / image.maskPad * image.maskPad;
+	} else if (image.transparentPixel != -1) {
+		alphaMode = palette.isDirect ? ALPHA_MASK_RGB : ALPHA_MASK_INDEX;
+		transparentPixel = image.transparentPixel;
+	} else if (image.alpha != -1) {
+		alphaMode = image.alpha & 0xFF;
+	} else if (image.alphaData != null) {
+		alphaMode = ALPHA_CHANNEL_SEPARATE;
+		alphaData = image.alphaData;
+	}
+
+	/*** Prepare destination-related data ***/
+	final int dao, dro, dgo, dbo;
+	if (destOrder == MSB_FIRST) {
+		dao = 0; dro = 1; dgo = 2; dbo = 3;
+	} else {
+		dao = 3; dro = 2; dgo = 1; dbo = 0;
+	}
+
+	/*** Blit ***/
+	final int indexMask = (1 << depth) - 1;
+	for (int y = 0; y < height; y++) {
+		int sp = y * srcStride;
+		int dp = y * destStride;
+		int ap = y * width;
+		int mp = y * maskStride;
+		for (int x = 0; x < width; x++, dp += 4) {
+			int pixel, r, g, b;
+			if (colors != null) {
+				if (depth == 8) {
+					pixel = srcData[sp + x] & 0xFF;
+				} else {
+					int bit = x * depth;
+					pixel = (srcData[sp + (bit >> 3)] >> (8 - depth - (bit & 7))) & indexMask;
+				}
+				int rgb = colors[pixel];
+				r = (rgb >> 16) & 0xFF;
+				g = (rgb >> 8) & 0xFF;
+				b = rgb & 0xFF;
+			} else {
+				int index = sp + x * sbpp;
+				r = srcData[index + sro] & 0xFF;
+				g = srcData[index + sgo] & 0xFF;
+				b = srcData[index + sbo] & 0xFF;
+				pixel = 0;
+				if (alphaMode == ALPHA_MASK_RGB) {
+					for (int i = 0; i < sbpp; i++) {
+						pixel = (pixel << 8) | (srcData[index + i] & 0xFF);
+					}
+				}
+			}
+			int alpha;
+			switch (alphaMode) {
+				case ALPHA_MASK_PACKED:
+					alpha = ((alphaData[mp + (x >> 3)] >> (7 - (x & 7))) & 1) != 0 ? 0xFF : 0;
+					break;
+				case ALPHA_MASK_INDEX:
+				case ALPHA_MASK_RGB:
+					alpha = pixel != transparentPixel ? 0xFF : 0;
+					break;
+				case ALPHA_CHANNEL_SEPARATE:
+					alpha = alphaData[ap + x] & 0xFF;
+					break;
+				default:
+					alpha = alphaMode;
+			}
+			if (alpha != 0xFF) {
+				/* pre-multiplied alpha */
+				r = r * alpha + 128;
+				r = (r + (r >> 8)) >> 8;
+				g = g * alpha + 128;
+				g = (g + (g >> 8)) >> 8;
+				b = b * alpha + 128;
+				b = (b + (b >> 8)) >> 8;
+			}
+			destData[dp + dao] = (byte)alpha;
+			destData[dp + dro] = (byte)r;
+			destData[dp + dgo] = (byte)g;
+			destData[dp + dbo] = (byte)b;
+		}
+	}
+	return true;
+}
+
+/**
+ * Computes the offset of a channel within a pixel of <code>bytes</code>
+ * bytes stored most significant byte first, or returns -1 if the mask
+ * does not cover exactly one whole byte.
+ */
+static int getByteOffset(int mask, int bytes) {
+	for (int i = 0; i < bytes; i++) {
+		if (mask == 0xFF << ((bytes - 1 - i) * 8)) return i;
+	}
+	return -1;
+}
+
 /**
  * Computes the required channel shift from a mask.
  */
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.util.Hashtable;
+import org.eclipse.swt.*;
+import org.eclipse.swt.internal.Compatibility;
+
+/**
+ * Instances of this class keep the image data loaded from files,
+ * so that loading the same file again does not decode it again.
+ * <p>
+ * Entries are keyed by the name of the file and by the load hints
+ * of the loader (its <code>scaleDenominator</code>), and are only
+ * used while the modification time of the file is unchanged. When
+ * the pixel data of the entries exceeds the byte limit of the cache,
+ * the least recently used entries are evicted. The entries can also
+ * be held through soft references, so that the garbage collector may
+ * reclaim them when memory is low. Files whose modification time
+ * cannot be determined are not cached.
+ * </p><p>
+ * The cache given to <code>setDefault</code> is used by
+ * <code>ImageLoader.load(String)</code>, and therefore by
+ * <code>ImageData(String)</code> and <code>Image(Device, String)</code>.
+ * There is no default cache unless one is set. Image data answered
+ * from the cache is a copy, which the caller may modify. Listeners of
+ * the loader are not notified when the images are found in the cache.
+ * </p><p>
+ * This class may be used from any thread.
+ * </p>
+ *
+ * @see ImageLoader#load(String)
+ *
+ * @since 3.104
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class ImageDataCache {
+	int byteLimit;
+	boolean softReferences;
+	int byteCount;
+	int hitCount, missCount, evictionCount;
+
+	/* The entries by key, and in order of use, the most recent first */
+	Hashtable entries = new Hashtable();
+	Entry first, last;
+
+	static ImageDataCache defaultCache;
+
+	static final class Entry {
+		String key;
+		long lastModified;
+		int size;
+		Object images;
+		int logicalScreenWidth, logicalScreenHeight, backgroundPixel, repeatCount, fileFormat;
+		Entry previous, next;
+	}
+
+/**
+ * Constructs a new, empty cache which holds at most the given
+ * number of bytes of image data.
+ *
+ * @param byteLimit the maximum size of the cached image data, in bytes
+ * @param softReferences whether the entries may be reclaimed by the garbage collector
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the byte limit is negative</li>
+ * </ul>
+ */
+public ImageDataCache(int byteLimit, boolean softReferences) {
+	if (byteLimit < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	this.byteLimit = byteLimit;
+	this.softReferences = softReferences;
+}
+
+/**
+ * Returns the cache used when images are loaded from files,
+ * or <code>null</code> if they are not cached.
+ *
+ * @return the default cache, or <code>null</code>
+ */
+public static synchronized ImageDataCache getDefault() {
+	return defaultCache;
+}
+
+/**
+ * Sets the cache used when images are loaded from files. The
+ * argument may be <code>null</code>, to stop caching them.
+ *
+ * @param cache the new default cache, or <code>null</code>
+ */
+public static synchronized void setDefault(ImageDataCache cache) {
+	defaultCache = cache;
+}
+
+/**
+ * Removes all the entries of the receiver. The counters are
+ * not reset.
+ */
+public synchronized void clear() {
+	entries.clear();
+	first = last = null;
+	byteCount = 0;
+}
+
+/**
+ * Returns the number of bytes of image data held by the receiver.
+ *
+ * @return the size of the cached image data, in bytes
+ */
+public synchronized int getByteCount() {
+	return byteCount;
+}
+
+/**
+ * Returns the maximum number of bytes of image data held by the receiver.
+ *
+ * @return the byte limit
+ */
+public synchronized int getByteLimit() {
+	return byteLimit;
+}
+
+/**
+ * Returns the number of entries removed from the receiver to stay
+ * within its byte limit.
+ *
+ * @return the number of evictions
+ */
+public synchronized int getEvictionCount() {
+	return evictionCount;
+}
+
+/**
+ * Returns the number of loads which were answered by the receiver.
+ *
+ * @return the number of cache hits
+ */
+public synchronized int getHitCount() {
+	return hitCount;
+}
+
+/**
+ * Returns the number of loads which had to decode the file, because
+ * it was not in the receiver, had changed or had been reclaimed.
+ *
+ * @return the number of cache misses
+ */
+public synchronized int getMissCount() {
+	return missCount;
+}
+
+/**
+ * Sets the maximum number of bytes of image data held by the
+ * receiver, evicting the least recently used entries if needed.
+ *
+ * @param byteLimit the new byte limit
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the byte limit is negative</li>
+ * </ul>
+ */
+public synchronized void setByteLimit(int byteLimit) {
+	if (byteLimit < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	this.byteLimit = byteLimit;
+	evict();
+}
+
+/**
+ * Answer the images of the given file, as if loaded by the given
+ * loader, from the receiver if possible. The fields of the loader
+ * describing the file are set in both cases. When <code>copy</code>
+ * is false, the answered images are shared with the receiver and
+ * must not be modified.
+ */
+ImageData[] load(String filename, ImageLoader loader, boolean copy) {
+	String key = filename + '?' + loader.scaleDenominator;
+	long lastModified = Compatibility.lastModified(filename);
+	ImageData[] images = null;
+	synchronized (this) {
+		Entry entry = (Entry) entries.get(key);
+		if (entry != null) {
+			images = (ImageData[]) (softReferences ? Compatibility.getReferent(entry.images) : entry.images);
+			if (images == null || entry.lastModified != lastModified) {
+				remove(entry);
+				images = null;
+			}
+		}
+		if (images != null) {
+			hitCount++;
+			remove(entry);
+			addFirst(entry);
+			loader.reset();
+			loader.logicalScreenWidth = entry.logicalScreenWidth;
+			loader.logicalScreenHeight = entry.logicalScreenHeight;
+			loader.backgroundPixel = entry.backgroundPixel;
+			loader.repeatCount = entry.repeatCount;
+			loader.fileFormat = entry.fileFormat;
+		} else {
+			missCount++;
+		}
+	}
+	if (images == null) {
+		/* Decode outside of the lock, so that other files can be loaded meanwhile */
+		images = loader.loadFile(filename);
+		if (lastModified != 0) put(key, lastModified, images, loader);
+	}
+	if (copy) {
+		ImageData[] result = new ImageData[images.length];
+		for (int i = 0; i < images.length; i++) {
+			result[i] = (ImageData) images[i].clone();
+		}
+		images = result;
+	}
+	return images;
+}
+
+synchronized void put(String key, long lastModified, ImageData[] images, ImageLoader loader) {
+	int size = 0;
+	for (int i = 0; i < images.length; i++) {
+		ImageData image = images[i];
+		size += image.data.length;
+		if (image.maskData != null) size += image.maskData.length;
+		if (image.alphaData != null) size += image.alphaData.length;
+	}
+	if (size > byteLimit) return;
+	Entry entry = (Entry) entries.get(key);
+	if (entry != null) remove(entry);
+	entry = new Entry();
+	entry.key = key;
+	entry.lastModified = lastModified;
+	entry.size = size;
+	entry.images = softReferences ? Compatibility.newSoftReference(images) : images;
+	entry.logicalScreenWidth = loader.logicalScreenWidth;
+	entry.logicalScreenHeight = loader.logicalScreenHeight;
+	entry.backgroundPixel = loader.backgroundPixel;
+	entry.repeatCount = loader.repeatCount;
+	entry.fileFormat = loader.fileFormat;
+	addFirst(entry);
+	evict();
+}
+
+void addFirst(Entry entry) {
+	entry.previous = null;
+	entry.next = first;
+	if (first != null) first.previous = entry;
+	first = entry;
+	if (last == null) last = entry;
+	entries.put(entry.key, entry);
+	byteCount += entry.size;
+}
+
+void remove(Entry entry) {
+	if (entry.previous != null) {
+		entry.previous.next = entry.next;
+	} else {
+		first = entry.next;
+	}
+	if (entry.next != null) {
+		entry.next.previous = entry.previous;
+	} else {
+		last = entry.previous;
+	}
+	entry.previous = entry.next = null;
+	entries.remove(entry.key);
+	byteCount -= entry.size;
+}
+
+void evict() {
+	while (byteCount > byteLimit && last != null) {
+		remove(last);
+		evictionCount++;
+	}
+}
+
+}
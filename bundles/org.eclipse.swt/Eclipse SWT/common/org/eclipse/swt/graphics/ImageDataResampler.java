@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.internal.*;
+
+/**
+ * Internal class that resamples an ImageData to a new size with
+ * a separable filter, for ImageData.scaledTo(int, int, int).
+ * <p>
+ * The filter weights are computed once per destination column and
+ * row, and are stored as integers which sum to <code>1 &lt;&lt; WEIGHT_BITS</code>.
+ * Colors are premultiplied by their alpha while they are filtered,
+ * so that transparent pixels do not bleed into their neighbours.
+ * The destination rows are divided into bands which are filtered
+ * first horizontally, then vertically, and large images have their
+ * bands processed on several threads.
+ * </p>
+ */
+final class ImageDataResampler {
+	ImageData source, dest;
+	boolean flipX, flipY;
+
+	/* The transparency of the source */
+	int transparencyType;
+	ImageData sourceMask;
+
+	/* The channel lookup tables for the source pixels */
+	byte[] reds, greens, blues;
+	int redMask, greenMask, blueMask;
+	int redShift, greenShift, blueShift;
+	int redWidth, greenWidth, blueWidth;
+
+	/* The contributions of the source columns and rows */
+	int[] xStart, xCount, xWeights;
+	int xStride;
+	int[] yStart, yCount, yWeights;
+	int yStride;
+
+	int bandCount;
+
+	static final int WEIGHT_BITS = 14;
+	static final int EXTRA_BITS = 6;
+	static final int SOURCE_ROWS_PER_BAND = 64;
+	static final int BANDS_PER_THREAD = 4;
+	static final int MIN_PARALLEL_PIXELS = 256 * 256;
+
+ImageDataResampler(ImageData source, int width, int height, int filter) {
+	this.source = source;
+	flipX = width < 0;
+	if (flipX) width = -width;
+	flipY = height < 0;
+	if (flipY) height = -height;
+
+	transparencyType = source.getTransparencyType();
+	byte[] alphaData = null, maskData = null;
+	int maskPad = 0;
+	if (transparencyType == SWT.TRANSPARENCY_ALPHA) {
+		alphaData = new byte[width * height];
+	} else if (transparencyType != SWT.TRANSPARENCY_NONE) {
+		sourceMask = source.getTransparencyMask();
+		maskPad = 4;
+		maskData = new byte[((width + 7) / 8 + 3) / 4 * 4 * height];
+	}
+	dest = new ImageData(
+		width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF),
+		4, null, maskPad, maskData,
+		alphaData, source.alpha, -1, source.type,
+		source.x, source.y, source.disposalMethod, source.delayTime);
+
+	PaletteData palette = source.palette;
+	if (palette.isDirect) {
+		redMask = palette.redMask;
+		greenMask = palette.greenMask;
+		blueMask = palette.blueMask;
+		redShift = ImageData.getChannelShift(redMask);
+		greenShift = ImageData.getChannelShift(greenMask);
+		blueShift = ImageData.getChannelShift(blueMask);
+		redWidth = ImageData.getChannelWidth(redMask, redShift);
+		greenWidth = ImageData.getChannelWidth(greenMask, greenShift);
+		blueWidth = ImageData.getChannelWidth(blueMask, blueShift);
+		if (redWidth <= 8) reds = ImageData.ANY_TO_EIGHT[redWidth];
+		if (greenWidth <= 8) greens = ImageData.ANY_TO_EIGHT[greenWidth];
+		if (blueWidth <= 8) blues = ImageData.ANY_TO_EIGHT[blueWidth];
+	} else {
+		RGB[] rgbs = palette.getRGBs();
+		int length = 1 << source.depth;
+		reds = new byte[length];
+		greens = new byte[length];
+		blues = new byte[length];
+		for (int i = 0; i < rgbs.length && i < length; i++) {
+			reds[i] = (byte)rgbs[i].red;
+			greens[i] = (byte)rgbs[i].green;
+			blues[i] = (byte)rgbs[i].blue;
+		}
+	}
+
+	xStart = new int[width];
+	xCount = new int[width];
+	xStride = getContributions(filter, source.width, width, flipX, xStart, xCount);
+	xWeights = new int[width * xStride];
+	getWeights(filter, source.width, width, flipX, xStart, xCount, xWeights, xStride);
+	yStart = new int[height];
+	yCount = new int[height];
+	yStride = getContributions(filter, source.height, height, flipY, yStart, yCount);
+	yWeights = new int[height * yStride];
+	getWeights(filter, source.height, height, flipY, yStart, yCount, yWeights, yStride);
+}
+
+static double getSupport(int filter) {
+	switch (filter) {
+		case SWT.FILTER_BOX: return 0.5;
+		case SWT.FILTER_BILINEAR: return 1;
+		case SWT.FILTER_BICUBIC: return 2;
+		case SWT.FILTER_LANCZOS: return 3;
+	}
+	SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	return 0;
+}
+
+static double getWeight(int filter, double x) {
+	if (x < 0) x = -x;
+	switch (filter) {
+		case SWT.FILTER_BOX:
+			return x < 0.5 ? 1 : 0;
+		case SWT.FILTER_BILINEAR:
+			return x < 1 ? 1 - x : 0;
+		case SWT.FILTER_BICUBIC:
+			/* Catmull-Rom spline (a = -0.5) */
+			if (x < 1) return (1.5 * x - 2.5) * x * x + 1;
+			if (x < 2) return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+			return 0;
+		case SWT.FILTER_LANCZOS:
+			/* Lanczos windowed sinc with three lobes */
+			if (x == 0) return 1;
+			if (x >= 3) return 0;
+			double px = Math.PI * x;
+			return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+	}
+	return 0;
+}
+
+/**
+ * Computes the first source index and the number of source indices
+ * which contribute to each destination index, and returns the
+ * largest number of contributions.
+ */
+static int getContributions(int filter, int sourceSize, int destSize, boolean flip, int[] start, int[] count) {
+	double scale = (double)sourceSize / destSize;
+	double filterScale = Math.max(scale, 1);
+	double support = getSupport(filter) * filterScale;
+	int stride = 1;
+	for (int i = 0; i < destSize; i++) {
+		double center = ((flip ? destSize - 1 - i : i) + 0.5) * scale;
+		int min = Math.max(0, (int)Math.floor(center - support + 0.5));
+		int max = Math.min(sourceSize, (int)Math.floor(center + support + 0.5));
+		if (max <= min) {
+			min = Math.min(Math.max(0, (int)center), sourceSize - 1);
+			max = min + 1;
+		}
+		start[i] = min;
+		count[i] = max - min;
+		stride = Math.max(stride, max - min);
+	}
+	return stride;
+}
+
+/**
+ * Computes the integer weights of the contributions, which sum
+ * to <code>1 &lt;&lt; WEIGHT_BITS</code> for each destination index.
+ */
+static void getWeights(int filter, int sourceSize, int destSize, boolean flip, int[] start, int[] count, int[] weights, int stride) {
+	double scale = (double)sourceSize / destSize;
+	double filterScale = Math.max(scale, 1);
+	double[] values = new double[stride];
+	for (int i = 0; i < destSize; i++) {
+		double center = ((flip ? destSize - 1 - i : i) + 0.5) * scale;
+		double total = 0;
+		for (int j = 0; j < count[i]; j++) {
+			values[j] = getWeight(filter, (start[i] + j + 0.5 - center) / filterScale);
+			total += values[j];
+		}
+		int offset = i * stride, sum = 0, largest = 0;
+		for (int j = 0; j < count[i]; j++) {
+			int weight = total != 0 ? (int)Math.floor(values[j] / total * (1 << WEIGHT_BITS) + 0.5) : 0;
+			weights[offset + j] = weight;
+			sum += weight;
+			if (weight > weights[offset + largest]) largest = j;
+		}
+		/* Give the rounding error to the largest weight, so that flat areas are reproduced exactly */
+		weights[offset + largest] += (1 << WEIGHT_BITS) - sum;
+	}
+}
+
+ImageData resample() {
+	int threads = 1;
+	if (dest.width * dest.height >= MIN_PARALLEL_PIXELS || source.width * source.height >= MIN_PARALLEL_PIXELS) {
+		threads = Compatibility.availableProcessors();
+	}
+	bandCount = Math.min(dest.height, Math.max(1, source.height / SOURCE_ROWS_PER_BAND));
+	if (threads > 1) bandCount = Math.min(dest.height, Math.max(bandCount, threads * BANDS_PER_THREAD));
+	if (threads > 1 && bandCount > 1) {
+		runBands(Math.min(threads, bandCount));
+	} else {
+		for (int band = 0; band < bandCount; band++) {
+			resampleBand(band);
+		}
+	}
+	return dest;
+}
+
+void runBands(int threads) {
+	final int[] nextBand = new int[1];
+	final Throwable[] error = new Throwable[1];
+	Runnable runnable = new Runnable() {
+		public void run() {
+			while (true) {
+				int band;
+				synchronized (nextBand) {
+					if (nextBand[0] >= bandCount || error[0] != null) return;
+					band = nextBand[0]++;
+				}
+				try {
+					resampleBand(band);
+				} catch (Throwable e) {
+					synchronized (nextBand) {
+						if (error[0] == null) error[0] = e;
+					}
+				}
+			}
+		}
+	};
+	Thread[] workers = new Thread[threads - 1];
+	for (int i = 0; i < workers.length; i++) {
+		workers[i] = new Thread(runnable, "SWT Image Resampler"); //$NON-NLS-1$
+		workers[i].start();
+	}
+	runnable.run();
+	for (int i = 0; i < workers.length; i++) {
+		boolean joined = false;
+		while (!joined) {
+			try {
+				workers[i].join();
+				joined = true;
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+	if (error[0] instanceof RuntimeException) throw (RuntimeException)error[0];
+	if (error[0] instanceof Error) throw (Error)error[0];
+}
+
+/**
+ * Reads one row of the source as premultiplied red, green, blue
+ * and alpha values, four entries per pixel.
+ */
+void getSourceRow(int y, int[] pixels, int[] maskPixels, int[] row) {
+	int width = source.width;
+	source.getPixels(0, y, width, pixels, 0);
+	if (sourceMask != null) sourceMask.getPixels(0, y, width, maskPixels, 0);
+	byte[] alphaData = source.alphaData;
+	int alphaOffset = y * width;
+	boolean isDirect = source.palette.isDirect;
+	for (int x = 0, i = 0; x < width; x++, i += 4) {
+		int pixel = pixels[x], r, g, b;
+		if (isDirect) {
+			r = (pixel & redMask) >>> redShift;
+			g = (pixel & greenMask) >>> greenShift;
+			b = (pixel & blueMask) >>> blueShift;
+			r = reds != null ? reds[r] & 0xFF : r >>> (redWidth - 8);
+			g = greens != null ? greens[g] & 0xFF : g >>> (greenWidth - 8);
+			b = blues != null ? blues[b] & 0xFF : b >>> (blueWidth - 8);
+		} else {
+			r = reds[pixel] & 0xFF;
+			g = greens[pixel] & 0xFF;
+			b = blues[pixel] & 0xFF;
+		}
+		int a = 255;
+		switch (transparencyType) {
+			case SWT.TRANSPARENCY_ALPHA: a = alphaData[alphaOffset + x] & 0xFF; break;
+			case SWT.TRANSPARENCY_MASK:
+			case SWT.TRANSPARENCY_PIXEL: a = maskPixels[x] != 0 ? 255 : 0; break;
+		}
+		if (a != 255) {
+			r = (r * a + 127) / 255;
+			g = (g * a + 127) / 255;
+			b = (b * a + 127) / 255;
+		}
+		row[i] = r;
+		row[i + 1] = g;
+		row[i + 2] = b;
+		row[i + 3] = a;
+	}
+}
+
+/**
+ * Resamples one band of destination rows. The source rows which
+ * contribute to the band are filtered horizontally into a buffer
+ * which is then filtered vertically into the destination.
+ */
+void resampleBand(int band) {
+	int startRow = band * dest.height / bandCount;
+	int endRow = (band + 1) * dest.height / bandCount;
+	int firstSourceRow = source.height, lastSourceRow = 0;
+	for (int y = startRow; y < endRow; y++) {
+		firstSourceRow = Math.min(firstSourceRow, yStart[y]);
+		lastSourceRow = Math.max(lastSourceRow, yStart[y] + yCount[y]);
+	}
+
+	/* Filter the contributing source rows horizontally */
+	int destWidth = dest.width;
+	int[] pixels = new int[source.width];
+	int[] maskPixels = sourceMask != null ? new int[source.width] : null;
+	int[] row = new int[source.width * 4];
+	int[][] buffer = new int[lastSourceRow - firstSourceRow][destWidth * 4];
+	int round = 1 << (WEIGHT_BITS - EXTRA_BITS - 1);
+	for (int sy = firstSourceRow; sy < lastSourceRow; sy++) {
+		getSourceRow(sy, pixels, maskPixels, row);
+		int[] line = buffer[sy - firstSourceRow];
+		for (int x = 0, i = 0; x < destWidth; x++, i += 4) {
+			int r = round, g = round, b = round, a = round;
+			int weightOffset = x * xStride;
+			int sourceOffset = xStart[x] * 4;
+			for (int j = 0, count = xCount[x]; j < count; j++, sourceOffset += 4) {
+				int weight = xWeights[weightOffset + j];
+				r += weight * row[sourceOffset];
+				g += weight * row[sourceOffset + 1];
+				b += weight * row[sourceOffset + 2];
+				a += weight * row[sourceOffset + 3];
+			}
+			line[i] = r >> (WEIGHT_BITS - EXTRA_BITS);
+			line[i + 1] = g >> (WEIGHT_BITS - EXTRA_BITS);
+			line[i + 2] = b >> (WEIGHT_BITS - EXTRA_BITS);
+			line[i + 3] = a >> (WEIGHT_BITS - EXTRA_BITS);
+		}
+	}
+
+	/* Filter the buffer vertically into the destination rows */
+	byte[] data = dest.data, alphaData = dest.alphaData, maskData = dest.maskData;
+	int bytesPerLine = dest.bytesPerLine;
+	int maskBytesPerLine = maskData != null ? maskData.length / dest.height : 0;
+	round = 1 << (WEIGHT_BITS + EXTRA_BITS - 1);
+	for (int y = startRow; y < endRow; y++) {
+		int weightOffset = y * yStride;
+		int first = yStart[y] - firstSourceRow, count = yCount[y];
+		int dataOffset = y * bytesPerLine;
+		for (int x = 0, i = 0; x < destWidth; x++, i += 4) {
+			int r = round, g = round, b = round, a = round;
+			for (int j = 0; j < count; j++) {
+				int[] line = buffer[first + j];
+				int weight = yWeights[weightOffset + j];
+				r += weight * line[i];
+				g += weight * line[i + 1];
+				b += weight * line[i + 2];
+				a += weight * line[i + 3];
+			}
+			a = clamp(a >> (WEIGHT_BITS + EXTRA_BITS), 255);
+			r = clamp(r >> (WEIGHT_BITS + EXTRA_BITS), a);
+			g = clamp(g >> (WEIGHT_BITS + EXTRA_BITS), a);
+			b = clamp(b >> (WEIGHT_BITS + EXTRA_BITS), a);
+			if (a != 255 && a != 0) {
+				r = (r * 255 + a / 2) / a;
+				g = (g * 255 + a / 2) / a;
+				b = (b * 255 + a / 2) / a;
+			}
+			data[dataOffset++] = (byte)r;
+			data[dataOffset++] = (byte)g;
+			data[dataOffset++] = (byte)b;
+			if (alphaData != null) {
+				alphaData[y * destWidth + x] = (byte)a;
+			} else if (maskData != null && a >= 128) {
+				maskData[y * maskBytesPerLine + (x >> 3)] |= (byte)(0x80 >> (x & 7));
+			}
+		}
+	}
+}
+
+static int clamp(int value, int max) {
+	return value < 0 ? 0 : value > max ? max : value;
+}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+/**
+ * Instances of this class describe an image file or stream
+ * as read from its headers, without decoding its pixels.
+ * <p>
+ * They are returned by the <code>probe</code> methods of
+ * <code>ImageLoader</code>. The values are those that the
+ * <code>ImageData</code> of the first image would have if the
+ * stream was loaded.
+ * </p>
+ *
+ * @see ImageLoader#probe(java.io.InputStream)
+ * @see ImageLoader#probe(String)
+ *
+ * @since 3.104
+ */
+public final class ImageInfo {
+
+	/**
+	 * the file format of the image, one of the <code>SWT.IMAGE_*</code>
+	 * constants
+	 */
+	public int type;
+
+	/**
+	 * the width of the first image, in pixels (for GIF files,
+	 * the width of the logical screen)
+	 */
+	public int width;
+
+	/**
+	 * the height of the first image, in pixels (for GIF files,
+	 * the height of the logical screen)
+	 */
+	public int height;
+
+	/**
+	 * the color depth of the first image, in bits per pixel
+	 */
+	public int depth;
+
+	/**
+	 * the number of images in the file, such as the frames of an
+	 * animated GIF, the icons of an ICO file or the pages of a TIFF file
+	 */
+	public int imageCount;
+
+/**
+ * Constructs a new instance of this class given the values
+ * to store in its fields.
+ *
+ * @param type the file format of the image
+ * @param width the width of the first image
+ * @param height the height of the first image
+ * @param depth the color depth of the first image
+ * @param imageCount the number of images in the file
+ */
+public ImageInfo(int type, int width, int height, int depth, int imageCount) {
+	this.type = type;
+	this.width = width;
+	this.height = height;
+	this.depth = depth;
+	this.imageCount = imageCount;
+}
+
+/**
+ * Returns a string containing a concise, human-readable
+ * description of the receiver.
+ *
+ * @return a string representation of the image info
+ */
+@Override
+public String toString () {
+	return "ImageInfo {type=" + type + " width=" + width + " height=" + height + " depth=" + depth + " imageCount=" + imageCount + "}"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+}
+
+}
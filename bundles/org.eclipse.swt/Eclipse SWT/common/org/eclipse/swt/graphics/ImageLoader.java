@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -92,16 +92,69 @@ public class ImageLoader {
 	 * When saving png files, the value is from 0 to 3, but they do not impact the quality 
 	 * because PNG is lossless compression. 0 is uncompressed, 1 is low compression and fast,
 	 * 2 is default compression, and 3 is high compression but slow.
+	 * </p><p>
+	 * The png settings also control row filtering: 1 (fast) writes the rows unfiltered,
+	 * 2 (balanced, the default) chooses the filter of each row with a heuristic, and
+	 * 3 (smallest) additionally compares against unfiltered output and writes whichever
+	 * is smaller.
 	 * </p>
 	 * 
 	 * @since 3.8
 	 */
 	public int compression;
+	
+	/**
+	 * The number of threads used when saving jpeg files.
+	 * <p>
+	 * When the value is greater than 1, the image is divided into
+	 * groups of rows separated by restart markers, and the color
+	 * conversion, transform and entropy coding of the groups run
+	 * concurrently. Otherwise the image is encoded on the calling
+	 * thread, without restart markers. The default is 0.
+	 * </p>
+	 * 
+	 * @since 3.104
+	 */
+	public int parallelism;
+	
+	/**
+	 * The factor by which jpeg images are reduced while they are loaded.
+	 * <p>
+	 * When the value is 2, 4 or 8, the image is decoded directly at
+	 * 1/2, 1/4 or 1/8 of its width and height, which is considerably
+	 * faster and uses less memory than loading the full size image
+	 * and scaling it afterwards. Other values greater than 1 use the
+	 * largest of these reductions that does not exceed the value.
+	 * The loaded image data has the reduced size, rounded up. The
+	 * default is 0, which loads the image at full size. This field
+	 * is ignored by the other image formats.
+	 * </p>
+	 * 
+	 * @since 3.104
+	 */
+	public int scaleDenominator;
+	
+	/*
+	 * the file format of the last stream loaded by this loader,
+	 * or -1, which is checked first when the next stream is loaded
+	 */
+	int fileFormat = -1;
 		
 	/*
 	 * the set of ImageLoader event listeners, created on demand
 	 */
 	Vector imageLoaderListeners;
+	
+	/*
+	 * the state of the stream given to open(), and of the
+	 * thread which decodes its images ahead of loadNext()
+	 */
+	FileFormat openFormat;
+	Vector decodedImages;
+	Thread decodingThread;
+	Throwable decodingError;
+	boolean decodingDone;
+	int lookAhead;
 
 /**
  * Construct a new empty ImageLoader.
@@ -112,7 +165,8 @@ public ImageLoader() {
 
 /**
  * Resets the fields of the ImageLoader, except for the
- * <code>imageLoaderListeners</code> field.
+ * <code>imageLoaderListeners</code>, <code>parallelism</code>,
+ * <code>scaleDenominator</code> and <code>fileFormat</code> fields.
  */
 void reset() {
 	data = null;
@@ -148,11 +202,53 @@ public ImageData[] load(InputStream stream) {
 	return data;
 }
 
+/**
+ * Loads the image at the specified index from the specified input
+ * stream, such as a page of a TIFF file or a frame of a GIF file.
+ * Returns the loaded image data, or <code>null</code> if the stream
+ * contains fewer images. The <code>data</code> field is set to an
+ * array holding only that image.
+ * <p>
+ * The pages of a TIFF file before the requested one are not decoded,
+ * as the file gives the offset of each page. Other formats decode
+ * the images before the requested one and discard them.
+ * </p>
+ *
+ * @param stream the input stream to load the image from
+ * @param index the index of the image in the stream, starting at 0
+ * @return the image at the specified index, or <code>null</code>
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the index is negative</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @since 3.104
+ */
+public ImageData load(InputStream stream, int index) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (index < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	reset();
+	ImageData image = FileFormat.load(stream, this, index);
+	if (image != null) data = new ImageData[] {image};
+	return image;
+}
+
 /**
  * Loads an array of <code>ImageData</code> objects from the
  * file with the specified name. Throws an error if either
  * an error occurs while loading the images, or if the images are
  * not of a supported type. Returns the loaded image data array.
+ * <p>
+ * When a default <code>ImageDataCache</code> is set, the images
+ * are taken from it if the file was loaded before and has not
+ * changed since.
+ * </p>
  *
  * @param filename the name of the file to load the images from
  * @return an array of <code>ImageData</code> objects loaded from the specified file
@@ -168,6 +264,19 @@ public ImageData[] load(InputStream stream) {
  */
 public ImageData[] load(String filename) {
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	ImageDataCache cache = ImageDataCache.getDefault();
+	if (cache != null) {
+		data = cache.load(filename, this, true);
+		return data;
+	}
+	return loadFile(filename);
+}
+
+/**
+ * Loads the images of the file with the specified name,
+ * without looking for them in the image data cache.
+ */
+ImageData[] loadFile(String filename) {
 	InputStream stream = null;
 	try {
 		stream = Compatibility.newFileInputStream(filename);
@@ -184,6 +293,299 @@ public ImageData[] load(String filename) {
 	return null;
 }
 
+/**
+ * Reads only the headers of the specified input stream, and returns
+ * the format, size and depth of its first image and the number of
+ * images it contains. No pixel data is decoded, which makes this
+ * much faster than loading the images when only their description
+ * is needed. The fields of the receiver are not modified.
+ *
+ * @param stream the input stream to read the headers from
+ * @return a description of the images in the specified input stream
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see ImageInfo
+ *
+ * @since 3.104
+ */
+public ImageInfo probe(InputStream stream) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	return FileFormat.probe(stream, this);
+}
+
+/**
+ * Reads only the headers of the file with the specified name, and
+ * returns the format, size and depth of its first image and the
+ * number of images it contains. No pixel data is decoded, which
+ * makes this much faster than loading the images when only their
+ * description is needed. The fields of the receiver are not modified.
+ *
+ * @param filename the name of the file to read the headers from
+ * @return a description of the images in the specified file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see ImageInfo
+ *
+ * @since 3.104
+ */
+public ImageInfo probe(String filename) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	InputStream stream = null;
+	try {
+		stream = Compatibility.newFileInputStream(filename);
+		return probe(stream);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	} finally {
+		try {
+			if (stream != null) stream.close();
+		} catch (IOException e) {
+			// Ignore error
+		}
+	}
+	return null;
+}
+
+/**
+ * Prepares to load the images in the specified input stream one
+ * at a time, with <code>loadNext()</code>, instead of all at once.
+ * <p>
+ * This is useful for animated GIF images with many frames: each
+ * frame is decoded only when it is requested, so only the frames
+ * that the caller keeps use memory. TIFF images are read in the
+ * same way, one page at a time. PNG images are decoded by
+ * <code>loadNext()</code>, and the listeners of the receiver are
+ * notified as bands of rows are decoded, so that a large image can
+ * be shown before it is complete. Other formats are loaded at once
+ * and handed out one image at a time.
+ * </p><p>
+ * When <code>lookAhead</code> is greater than zero, a background
+ * thread decodes up to that many images ahead of the caller. In
+ * that case the listeners of the receiver are notified from that
+ * thread. The fields describing the stream, such as
+ * <code>logicalScreenWidth</code>, are set by this method; the
+ * <code>data</code> field is left <code>null</code>.
+ * </p><p>
+ * The stream is not closed by the receiver. It must not be used
+ * by the caller until <code>loadNext()</code> has returned
+ * <code>null</code> or <code>close()</code> has been called.
+ * </p>
+ *
+ * @param stream the input stream to load the images from
+ * @param lookAhead the number of images to decode in advance, or 0
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the look ahead is negative</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #loadNext()
+ * @see #close()
+ *
+ * @since 3.104
+ */
+public void open(InputStream stream, int lookAhead) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (lookAhead < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	close();
+	reset();
+	openFormat = FileFormat.open(stream, this);
+	this.lookAhead = lookAhead;
+	if (lookAhead > 0) {
+		final FileFormat format = openFormat;
+		final Vector images = decodedImages = new Vector();
+		decodingError = null;
+		decodingDone = false;
+		decodingThread = new Thread(new Runnable() {
+			public void run() {
+				decodeAhead(format, images);
+			}
+		}, "SWT Image Decoder"); //$NON-NLS-1$
+		decodingThread.setDaemon(true);
+		decodingThread.start();
+	}
+}
+
+/**
+ * Decodes the images of the given format into the given vector,
+ * keeping at most <code>lookAhead</code> of them ahead of loadNext().
+ */
+void decodeAhead(FileFormat format, Vector images) {
+	while (true) {
+		synchronized (images) {
+			while (images.size() >= lookAhead && decodedImages == images) {
+				try {
+					images.wait();
+				} catch (InterruptedException e) {}
+			}
+			if (decodedImages != images) return;
+		}
+		ImageData image = null;
+		Throwable error = null;
+		try {
+			image = format.loadNext();
+		} catch (Throwable t) {
+			error = t;
+		}
+		synchronized (images) {
+			if (decodedImages != images) return;
+			if (image != null) {
+				images.addElement(image);
+			} else {
+				decodingError = error;
+				decodingDone = true;
+			}
+			images.notifyAll();
+			if (image == null) return;
+		}
+	}
+}
+
+/**
+ * Loads the next image from the stream given to <code>open()</code>.
+ * Returns <code>null</code> when there are no more images, or when
+ * no stream is open.
+ *
+ * @return the next image, or <code>null</code>
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ * </ul>
+ *
+ * @see #open(InputStream, int)
+ *
+ * @since 3.104
+ */
+public ImageData loadNext() {
+	if (openFormat == null) return null;
+	ImageData image = null;
+	if (decodedImages == null) {
+		try {
+			image = openFormat.loadNext();
+		} finally {
+			if (image == null) close();
+		}
+		return image;
+	}
+	Vector images = decodedImages;
+	Throwable error = null;
+	synchronized (images) {
+		while (images.isEmpty() && !decodingDone) {
+			try {
+				images.wait();
+			} catch (InterruptedException e) {}
+		}
+		if (!images.isEmpty()) {
+			image = (ImageData) images.elementAt(0);
+			images.removeElementAt(0);
+			images.notifyAll();
+			return image;
+		}
+		error = decodingError;
+	}
+	close();
+	if (error instanceof RuntimeException) throw (RuntimeException) error;
+	if (error instanceof Error) throw (Error) error;
+	return null;
+}
+
+/**
+ * Stops loading the images of the stream given to <code>open()</code>.
+ * Images decoded in advance are discarded. When a thread decodes them,
+ * this waits for it to stop, so that the stream is no longer read when
+ * this method returns. This does nothing when no stream is open.
+ *
+ * @see #open(InputStream, int)
+ *
+ * @since 3.104
+ */
+public void close() {
+	Vector images = decodedImages;
+	if (images != null) {
+		synchronized (images) {
+			decodedImages = null;
+			images.removeAllElements();
+			images.notifyAll();
+		}
+	}
+	Thread thread = decodingThread;
+	decodingThread = null;
+	openFormat = null;
+	/*
+	* The listeners are notified from the decoding thread, which
+	* stops by itself when one of them closes the receiver.
+	*/
+	if (thread != null && thread != Thread.currentThread()) {
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {}
+		}
+	}
+}
+
+/**	 
+ * Invokes internal SWT functionality to answer the file format
+ * of the last stream loaded by the receiver, or -1.
+ * <p>
+ * <b>IMPORTANT:</b> This method is <em>not</em> part of the public
+ * API for <code>ImageLoader</code>. It is marked public only so that it
+ * can be shared within the packages provided by SWT. It is subject
+ * to change without notice, and should never be called from
+ * application code.
+ * </p>
+ * <p>
+ * This method is for internal use, and is not described further.
+ * </p>
+ * 
+ * @noreference This method is not intended to be referenced by clients.
+ */
+public int internal_getFileFormat() {
+	return fileFormat;
+}
+
+/**	 
+ * Invokes internal SWT functionality to set the file format
+ * which is checked first when the next stream is loaded.
+ * <p>
+ * <b>IMPORTANT:</b> This method is <em>not</em> part of the public
+ * API for <code>ImageLoader</code>. It is marked public only so that it
+ * can be shared within the packages provided by SWT. It is subject
+ * to change without notice, and should never be called from
+ * application code.
+ * </p>
+ * <p>
+ * This method is for internal use, and is not described further.
+ * </p>
+ * 
+ * @noreference This method is not intended to be referenced by clients.
+ */
+public void internal_setFileFormat(int fileFormat) {
+	this.fileFormat = fileFormat;
+}
+
 /**
  * Saves the image data in this ImageLoader to the specified stream.
  * The format parameter can have one of the following values:
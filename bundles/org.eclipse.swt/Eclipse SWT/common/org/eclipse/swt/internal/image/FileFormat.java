@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,29 +20,107 @@ import org.eclipse.swt.graphics.*;
  * in various image file formats.
  *
  */
-@SuppressWarnings({"rawtypes"})
 public abstract class FileFormat {
-	static final String FORMAT_PACKAGE = "org.eclipse.swt.internal.image"; //$NON-NLS-1$
-	static final String FORMAT_SUFFIX = "FileFormat"; //$NON-NLS-1$
-	static final String[] FORMATS = {"WinBMP", "WinBMP", "GIF", "WinICO", "JPEG", "PNG", "TIFF", "OS2BMP"}; //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$//$NON-NLS-5$ //$NON-NLS-6$//$NON-NLS-7$//$NON-NLS-8$
+	/**
+	 * The number of bytes at the start of a stream which are enough
+	 * to recognize any of the supported file formats.
+	 */
+	static final int HEADER_LENGTH = 18;
+	
+	/**
+	 * The file formats, indexed by their SWT.IMAGE_* constant. Each
+	 * instance is only used to recognize its format; loading and saving
+	 * always use a new instance.
+	 * <p>
+	 * The instances are created by a holder class when a format is first
+	 * recognized, as creating them while this class is initialized would
+	 * make its initialization depend on that of its subclasses.
+	 * </p>
+	 */
+	static final class Formats {
+		static final FileFormat[] FORMATS = {
+			new WinBMPFileFormat(),
+			new WinBMPFileFormat(),
+			new GIFFileFormat(),
+			new WinICOFileFormat(),
+			new JPEGFileFormat(),
+			new PNGFileFormat(),
+			new TIFFFileFormat(),
+			new OS2BMPFileFormat(),
+		};
+	}
 	
 	LEDataInputStream inputStream;
 	LEDataOutputStream outputStream;
 	ImageLoader loader;
 	int compression;
+	
+	/* The images not yet handed out by loadNext() */
+	ImageData[] images;
+	int imageIndex;
 
-static FileFormat getFileFormat (LEDataInputStream stream, String format) throws Exception {
-	Class clazz = Class.forName(FORMAT_PACKAGE + '.' + format + FORMAT_SUFFIX);
-	FileFormat fileFormat = (FileFormat) clazz.newInstance();
-	if (fileFormat.isFileFormat(stream)) return fileFormat;
+static FileFormat newFileFormat(int format) {
+	switch (format) {
+		case SWT.IMAGE_BMP:
+		case SWT.IMAGE_BMP_RLE: return new WinBMPFileFormat();
+		case SWT.IMAGE_GIF: return new GIFFileFormat();
+		case SWT.IMAGE_ICO: return new WinICOFileFormat();
+		case SWT.IMAGE_JPEG: return new JPEGFileFormat();
+		case SWT.IMAGE_PNG: return new PNGFileFormat();
+		case SWT.IMAGE_TIFF: return new TIFFFileFormat();
+		case SWT.IMAGE_OS2_BMP: return new OS2BMPFileFormat();
+	}
 	return null;
 }
 
+/**
+ * Answer the first HEADER_LENGTH bytes of the specified input
+ * stream, and push them back so that they are read again. When
+ * the stream is shorter, the missing bytes are pushed back as
+ * zeros, which makes a truncated image fail as invalid data.
+ */
+static byte[] readHeader(LEDataInputStream stream) {
+	byte[] header = new byte[HEADER_LENGTH];
+	try {
+		stream.read(header);
+		stream.unread(header);
+	} catch (IOException e) {
+	}
+	return header;
+}
+
+/**
+ * Answer the SWT.IMAGE_* constant of the file format whose signature
+ * matches the specified header, or -1 if none of them does. The format
+ * is tried first, when it is not -1. Both BMP variants are answered as
+ * SWT.IMAGE_BMP, since the same file format reads them.
+ */
+static int getFormat(byte[] header, int format) {
+	FileFormat[] formats = Formats.FORMATS;
+	if (format == SWT.IMAGE_BMP_RLE) format = SWT.IMAGE_BMP;
+	if (format >= 0 && format < formats.length && formats[format].isFileFormat(header)) {
+		return format;
+	}
+	for (int i = 0; i < formats.length; i++) {
+		if (i == format || i == SWT.IMAGE_BMP_RLE) continue;
+		if (formats[i].isFileFormat(header)) return i;
+	}
+	return -1;
+}
+
+/**
+ * Return whether or not the specified header, holding the first
+ * HEADER_LENGTH bytes of a stream, represents this file format.
+ */
+abstract boolean isFileFormat(byte[] header);
+
 /**
  * Return whether or not the specified input stream
- * represents a supported file format.
+ * represents this file format.
  */
-abstract boolean isFileFormat(LEDataInputStream stream);
+boolean isFileFormat(LEDataInputStream stream) {
+	return isFileFormat(readHeader(stream));
+}
 
 abstract ImageData[] loadFromByteStream();
 
@@ -69,41 +147,145 @@ public ImageData[] loadFromStream(LEDataInputStream stream) {
  * return the device independent image array represented by the stream.
  */	
 public static ImageData[] load(InputStream is, ImageLoader loader) {
-	FileFormat fileFormat = null;
 	LEDataInputStream stream = new LEDataInputStream(is);
-	for (int i = 1; i < FORMATS.length; i++) {
-		if (FORMATS[i] != null) {
-			try {
-				fileFormat = getFileFormat (stream, FORMATS[i]);
-				if (fileFormat != null) break;
-			} catch (ClassNotFoundException e) {
-				FORMATS[i] = null;
-			} catch (Exception e) {
-			}
-		}
-	}
-	if (fileFormat == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	int format = getFormat(readHeader(stream), loader.internal_getFileFormat());
+	if (format == -1) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	loader.internal_setFileFormat(format);
+	FileFormat fileFormat = newFileFormat(format);
 	fileFormat.loader = loader;
 	return fileFormat.loadFromStream(stream);
 }
 
+/**
+ * Read only the headers of the specified input stream using the
+ * specified loader, and return a description of the images it
+ * contains. No pixel data is decoded, and the fields of the loader
+ * are not modified.
+ */
+public static ImageInfo probe(InputStream is, ImageLoader loader) {
+	LEDataInputStream stream = new LEDataInputStream(is);
+	int format = getFormat(readHeader(stream), loader.internal_getFileFormat());
+	if (format == -1) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	FileFormat fileFormat = newFileFormat(format);
+	fileFormat.loader = loader;
+	try {
+		fileFormat.inputStream = stream;
+		return fileFormat.probeByteStream();
+	} catch (Exception e) {
+		error(e);
+		return null;
+	}
+}
+
+/**
+ * Read the headers of the input stream, skipping the pixel
+ * data, and return a description of the images it contains.
+ */
+abstract ImageInfo probeByteStream() throws IOException;
+
+/**
+ * Open the specified input stream for reading the images it
+ * contains one at a time with <code>loadNext</code>.
+ */
+public static FileFormat open(InputStream is, ImageLoader loader) {
+	LEDataInputStream stream = new LEDataInputStream(is);
+	int format = getFormat(readHeader(stream), loader.internal_getFileFormat());
+	if (format == -1) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	loader.internal_setFileFormat(format);
+	FileFormat fileFormat = newFileFormat(format);
+	fileFormat.loader = loader;
+	try {
+		fileFormat.inputStream = stream;
+		fileFormat.openByteStream();
+	} catch (Exception e) {
+		error(e);
+	}
+	return fileFormat;
+}
+
+/**
+ * Read the specified input stream using the specified loader, and
+ * return the image at the given index, or <code>null</code> if there
+ * are fewer images. The images before it are only decoded when the
+ * format cannot find an image without decoding the previous ones.
+ */
+public static ImageData load(InputStream is, ImageLoader loader, int index) {
+	FileFormat fileFormat = open(is, loader);
+	try {
+		fileFormat.skipFromByteStream(index);
+		return fileFormat.loadNextFromByteStream();
+	} catch (Exception e) {
+		error(e);
+		return null;
+	}
+}
+
+/**
+ * Read and return the next image of the stream given to
+ * <code>open</code>, or <code>null</code> if there are no more.
+ */
+public ImageData loadNext() {
+	try {
+		return loadNextFromByteStream();
+	} catch (Exception e) {
+		error(e);
+		return null;
+	}
+}
+
+/**
+ * Prepare to read the images of the input stream one at a time.
+ * By default all of them are read here and handed out one by one;
+ * formats which can decode a single image at a time override this
+ * and <code>loadNextFromByteStream</code>.
+ */
+void openByteStream() throws IOException {
+	images = loadFromByteStream();
+	imageIndex = 0;
+}
+
+/**
+ * Read and return the next image of the input stream, or
+ * <code>null</code> if there are no more.
+ */
+ImageData loadNextFromByteStream() throws IOException {
+	if (imageIndex >= images.length) return null;
+	ImageData image = images[imageIndex];
+	images[imageIndex++] = null;
+	return image;
+}
+
+/**
+ * Skip the given number of images of the input stream. By default
+ * they are read and discarded; formats which can find an image
+ * without decoding the previous ones override this.
+ */
+void skipFromByteStream(int count) throws IOException {
+	for (int i = 0; i < count; i++) {
+		if (loadNextFromByteStream() == null) return;
+	}
+}
+
+static void error(Exception e) {
+	if (e instanceof IOException) {
+		SWT.error(SWT.ERROR_IO, e);
+	} else if (e instanceof SWTException || e instanceof IllegalArgumentException) {
+		throw (RuntimeException)e;
+	} else {
+		SWT.error(SWT.ERROR_INVALID_IMAGE, e);
+	}
+}
+
 /**
  * Write the device independent image array stored in the specified loader
  * to the specified output stream using the specified file format.
  */	
 public static void save(OutputStream os, int format, ImageLoader loader) {
-	if (format < 0 || format >= FORMATS.length) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
-	if (FORMATS[format] == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	FileFormat fileFormat = newFileFormat(format);
+	if (fileFormat == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
 	if (loader.data == null || loader.data.length < 1) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 
 	LEDataOutputStream stream = new LEDataOutputStream(os);
-	FileFormat fileFormat = null;
-	try {
-		Class clazz = Class.forName(FORMAT_PACKAGE + '.' + FORMATS[format] + FORMAT_SUFFIX);
-		fileFormat = (FileFormat) clazz.newInstance();
-	} catch (Exception e) {
-		SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
-	}
 	if (format == SWT.IMAGE_BMP_RLE) {
 		switch (loader.data[0].depth) {
 			case 8: fileFormat.compression = 1; break;
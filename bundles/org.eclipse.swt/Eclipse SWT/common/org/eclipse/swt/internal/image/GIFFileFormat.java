@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,8 @@ public final class GIFFileFormat extends FileFormat {
 	int delayTime = 0;
 	int transparentPixel = -1;
 	int repeatCount = 1;
+	PaletteData globalPalette;
+	int nextID;
 	
 	static final int GIF_APPLICATION_EXTENSION_BLOCK_ID = 0xFF;
 	static final int GIF_GRAPHICS_CONTROL_BLOCK_ID = 0xF9;
@@ -48,15 +50,8 @@ public final class GIFFileFormat extends FileFormat {
 	}
 
 	@Override
-	boolean isFileFormat(LEDataInputStream stream) {
-		try {
-			byte[] signature = new byte[3];
-			stream.read(signature);
-			stream.unread(signature);
-			return signature[0] == 'G' && signature[1] == 'I' && signature[2] == 'F';
-		} catch (Exception e) {
-			return false;
-		}
+	boolean isFileFormat(byte[] header) {
+		return header[0] == 'G' && header[1] == 'I' && header[2] == 'F';
 	}
 
 	/**
@@ -65,6 +60,24 @@ public final class GIFFileFormat extends FileFormat {
 	 */
 	@Override
 	ImageData[] loadFromByteStream() {
+		openByteStream();
+		ImageData[] images = new ImageData[0];
+		ImageData image;
+		while ((image = loadNextFromByteStream()) != null) {
+			ImageData[] oldImages = images;
+			images = new ImageData[oldImages.length + 1];
+			System.arraycopy(oldImages, 0, images, 0, oldImages.length);
+			images[images.length - 1] = image;
+		}
+		return images;
+	}
+
+	/**
+	 * Read the header and the global palette of the GIF, up to
+	 * the first block.
+	 */
+	@Override
+	void openByteStream() {
 		byte[] signature = new byte[3];
 		byte[] versionBytes = new byte[3];
 		byte[] block = new byte[7];
@@ -88,11 +101,11 @@ public final class GIFFileFormat extends FileFormat {
 		//aspect = block[6] & 0xFF;
 		bitsPerPixel = ((bitField >> 4) & 0x07) + 1;
 		defaultDepth = (bitField & 0x7) + 1;
-		PaletteData palette = null;
+		globalPalette = null;
 		if ((bitField & 0x80) != 0) {
 			// Global palette.
 			//sorted = (bitField & 0x8) != 0;
-			palette = readPalette(1 << defaultDepth);
+			globalPalette = readPalette(1 << defaultDepth);
 		} else {
 			// No global palette.
 			//sorted = false;
@@ -100,19 +113,25 @@ public final class GIFFileFormat extends FileFormat {
 			defaultDepth = bitsPerPixel;
 		}
 		loader.backgroundPixel = backgroundPixel;
+		imageIndex = 0;
+		nextID = readID();
+	}
 
-		ImageData[] images = new ImageData[0];
-		int id = readID();
+	/**
+	 * Read the blocks up to and including the next image block,
+	 * and return the image. Return null at the end of the GIF.
+	 */
+	@Override
+	ImageData loadNextFromByteStream() {
+		int id = nextID;
 		while (id != GIF_TRAILER_ID && id != -1) {
+			ImageData image = null;
 			if (id == GIF_IMAGE_BLOCK_ID) {
-				ImageData image = readImageBlock(palette);
+				image = readImageBlock(globalPalette);
 				if (loader.hasListeners()) {
 					loader.notifyListeners(new ImageLoaderEvent(loader, image, 3, true));
 				}
-				ImageData[] oldImages = images;
-				images = new ImageData[oldImages.length + 1];
-				System.arraycopy(oldImages, 0, images, 0, oldImages.length);
-				images[images.length - 1] = image;
+				imageIndex++;
 			} else if (id == GIF_EXTENSION_BLOCK_ID) {
 				/* Read the extension block. Currently, only the
 				 * interesting parts of certain extensions are kept,
@@ -124,13 +143,79 @@ public final class GIFFileFormat extends FileFormat {
 			} else {
 				/* The GIF is not to spec, but try to salvage it
 				 * if we read at least one image. */
-				if (images.length > 0) break;
+				if (imageIndex > 0) break;
 				SWT.error(SWT.ERROR_INVALID_IMAGE);
 			}
 			id = readID(); // block terminator (0)
 			if (id == 0) id = readID(); // next block ID (unless we just read it)
+			if (image != null) {
+				nextID = id;
+				return image;
+			}
+		}
+		nextID = -1;
+		return null;
+	}
+
+	/**
+	 * Read the header and the image descriptors of the GIF,
+	 * skipping the palettes, the extensions and the image data.
+	 */
+	@Override
+	ImageInfo probeByteStream() throws IOException {
+		byte[] block = new byte[13];
+		if (inputStream.read(block) != block.length) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		if (!(block[0] == 'G' && block[1] == 'I' && block[2] == 'F'))
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+		int width = (block[6] & 0xFF) | ((block[7] & 0xFF) << 8);
+		int height = (block[8] & 0xFF) | ((block[9] & 0xFF) << 8);
+		byte bitField = block[10];
+		int depth = ((bitField >> 4) & 0x07) + 1;
+		if ((bitField & 0x80) != 0) {
+			depth = (bitField & 0x7) + 1;
+			inputStream.skip(3 << depth);
+		}
+		int defaultDepth = depth, count = 0;
+		byte[] descriptor = new byte[9];
+		int id = readID();
+		while (id != GIF_TRAILER_ID && id != -1) {
+			if (id == GIF_IMAGE_BLOCK_ID) {
+				inputStream.read(descriptor);
+				int imageDepth = defaultDepth;
+				if ((descriptor[8] & 0x80) != 0) {
+					imageDepth = (descriptor[8] & 0x7) + 1;
+					inputStream.skip(3 << imageDepth);
+				}
+				if (count == 0) depth = imageDepth;
+				count++;
+				inputStream.read(); // initial code size
+				skipSubBlocks();
+			} else if (id == GIF_EXTENSION_BLOCK_ID) {
+				inputStream.read(); // extension label
+				skipSubBlocks();
+			} else {
+				/* Be as lenient as loading, which keeps the images read so far */
+				if (count > 0) break;
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+			}
+			id = readID();
+		}
+		// Promote depth to next highest supported value.
+		if (!(depth == 1 || depth == 4 || depth == 8)) {
+			depth = depth < 4 ? 4 : 8;
+		}
+		return new ImageInfo(SWT.IMAGE_GIF, width, height, depth, count);
+	}
+
+	/**
+	 * Skip a sequence of data sub-blocks, up to and including
+	 * the block terminator.
+	 */
+	void skipSubBlocks() throws IOException {
+		int size;
+		while ((size = inputStream.read()) > 0) {
+			if (inputStream.skip(size) < size) return;
 		}
-		return images;
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2014 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -46,6 +46,21 @@ public final class JPEGFileFormat extends FileFormat {
 	int currentByte;
 	int encoderQFactor = 75;
 	int eobrun = 0;
+	
+	/*
+	 * Parallel encoding state. The image is split into bands of
+	 * rows for color conversion and downsampling, and into groups
+	 * of MCU rows separated by restart markers for coding.
+	 */
+	int threads;
+	ImageData encodeImage;
+	byte[][] encodeComponents;
+	int mcuRowsPerGroup;
+	byte[][] encodedGroups;
+	static final int JOB_CONVERT = 0;
+	static final int JOB_DOWNSAMPLE = 1;
+	static final int JOB_ENCODE = 2;
+	static final int BANDS_PER_THREAD = 4;
 	/* JPEGConstants */
 	public static final int DCTSIZE = 8;
 	public static final int DCTSIZESQR = 64;
@@ -151,6 +166,11 @@ public final class JPEGFileFormat extends FileFormat {
 		53, 60, 61, 54, 47, 55, 62, 63
 	};
 
+	static final int[] Power2m1 = {
+		1, 3, 7, 15, 31, 63, 127, 255, 511, 1023, 2047, 4095, 8191, 
+		16383, 32767, 65535, 131125
+	};
+
 	public static final int[] CrRTable, CbBTable, CrGTable, CbGTable;
 	public static final int[] RYTable, GYTable, BYTable,
 		RCbTable, GCbTable, BCbTable, RCrTable, GCrTable, BCrTable, NBitsTable;
@@ -218,46 +238,25 @@ public final class JPEGFileFormat extends FileFormat {
 void compress(ImageData image, byte[] dataYComp, byte[] dataCbComp, byte[] dataCrComp) {
 	int srcWidth = image.width;
 	int srcHeight = image.height;
-	int vhFactor = maxV * maxH;
-	int[] frameComponent;
 	imageComponents = new byte[nComponents][];
 	for (int i = 0; i < nComponents; i++) {
-		frameComponent = frameComponents[componentIds[i]];
+		int[] frameComponent = frameComponents[componentIds[i]];
 		imageComponents[i] = new byte[frameComponent[CW] * frameComponent[CH]];
 	}
-	frameComponent = frameComponents[componentIds[ID_Y]];
+	int[] frameComponent = frameComponents[componentIds[ID_Y]];
 	for (int yPos = 0; yPos < srcHeight; yPos++) {
 		int srcOfs = yPos * srcWidth;
 		int dstOfs = yPos * frameComponent[CW];
 		System.arraycopy(dataYComp, srcOfs, imageComponents[ID_Y], dstOfs, srcWidth);
 	}
-	frameComponent = frameComponents[componentIds[ID_CB]];
-	for (int yPos = 0; yPos < srcHeight / maxV; yPos++) {
-		int destRowIndex = yPos * frameComponent[CW];
-		for (int xPos = 0; xPos < srcWidth / maxH; xPos++) {
-			int sum = 0;
-			for (int iv = 0; iv < maxV; iv++) {
-				int srcIndex = (yPos * maxV + iv) * srcWidth + (xPos * maxH);
-				for (int ih = 0; ih < maxH; ih++) {
-					sum += dataCbComp[srcIndex + ih] & 0xFF;
-				}
-			}
-			imageComponents[ID_CB][destRowIndex + xPos] = (byte)(sum / vhFactor);
-		}
-	}
-	frameComponent = frameComponents[componentIds[ID_CR]];
-	for (int yPos = 0; yPos < srcHeight / maxV; yPos++) {
-		int destRowIndex = yPos * frameComponent[CW];
-		for (int xPos = 0; xPos < srcWidth / maxH; xPos++) {
-			int sum = 0;
-			for (int iv = 0; iv < maxV; iv++) {
-				int srcIndex = (yPos * maxV + iv) * srcWidth + (xPos * maxH);
-				for (int ih = 0; ih < maxH; ih++) {
-					sum += dataCrComp[srcIndex + ih] & 0xFF;
-				}
-			}
-			imageComponents[ID_CR][destRowIndex + xPos] = (byte)(sum / vhFactor);
-		}
+	if (threads > 1) {
+		encodeImage = image;
+		encodeComponents = new byte[][] {dataYComp, dataCbComp, dataCrComp};
+		runJob(JOB_DOWNSAMPLE, getBandCount(srcHeight / maxV));
+		encodeComponents = null;
+	} else {
+		downsample(srcWidth, dataCbComp, ID_CB, 0, srcHeight / maxV);
+		downsample(srcWidth, dataCrComp, ID_CR, 0, srcHeight / maxV);
 	}
 	for (int iComp = 0; iComp < nComponents; iComp++) {
 		byte[] imageComponent = imageComponents[iComp];
@@ -287,6 +286,29 @@ void compress(ImageData image, byte[] dataYComp, byte[] dataCbComp, byte[] dataC
 		}
 	}
 }
+/**
+ * Average the full resolution chroma samples of the given
+ * component into rows startRow to endRow - 1 of its image
+ * component.
+ */
+void downsample(int srcWidth, byte[] dataComp, int iComp, int startRow, int endRow) {
+	int vhFactor = maxV * maxH;
+	int[] frameComponent = frameComponents[componentIds[iComp]];
+	byte[] imageComponent = imageComponents[iComp];
+	for (int yPos = startRow; yPos < endRow; yPos++) {
+		int destRowIndex = yPos * frameComponent[CW];
+		for (int xPos = 0; xPos < srcWidth / maxH; xPos++) {
+			int sum = 0;
+			for (int iv = 0; iv < maxV; iv++) {
+				int srcIndex = (yPos * maxV + iv) * srcWidth + (xPos * maxH);
+				for (int ih = 0; ih < maxH; ih++) {
+					sum += dataComp[srcIndex + ih] & 0xFF;
+				}
+			}
+			imageComponent[destRowIndex + xPos] = (byte)(sum / vhFactor);
+		}
+	}
+}
 void convert4BitRGBToYCbCr(ImageData image) {
 	RGB[] rgbs = image.getRGBs();
 	int paletteSize = rgbs.length;
@@ -407,6 +429,22 @@ void convertMultiRGBToYCbCr(ImageData image) {
 	byte[] dataYComp = new byte[bSize];
 	byte[] dataCbComp = new byte[bSize];
 	byte[] dataCrComp = new byte[bSize];
+	if (threads > 1) {
+		encodeImage = image;
+		encodeComponents = new byte[][] {dataYComp, dataCbComp, dataCrComp};
+		runJob(JOB_CONVERT, getBandCount(srcHeight));
+		encodeComponents = null;
+	} else {
+		convertMultiRGBToYCbCr(image, dataYComp, dataCbComp, dataCrComp, 0, srcHeight);
+	}
+	compress(image, dataYComp, dataCbComp, dataCrComp);
+}
+/**
+ * Convert rows startRow to endRow - 1 of the image into
+ * full resolution Y, Cb and Cr samples.
+ */
+void convertMultiRGBToYCbCr(ImageData image, byte[] dataYComp, byte[] dataCbComp, byte[] dataCrComp, int startRow, int endRow) {
+	int srcWidth = image.width;
 	PaletteData palette = image.palette;
 	int[] buffer = new int[srcWidth];
 	if (palette.isDirect) {
@@ -416,7 +454,7 @@ void convertMultiRGBToYCbCr(ImageData image) {
 		int redShift = palette.redShift;
 		int greenShift = palette.greenShift;
 		int blueShift = palette.blueShift;
-		for (int yPos = 0; yPos < srcHeight; yPos++) {
+		for (int yPos = startRow; yPos < endRow; yPos++) {
 			image.getPixels(0, yPos, srcWidth, buffer, 0);
 			int dstRowIndex = yPos * srcWidth;
 			for (int xPos = 0; xPos < srcWidth; xPos++) {
@@ -434,7 +472,7 @@ void convertMultiRGBToYCbCr(ImageData image) {
 			}
 		}
 	} else {
-		for (int yPos = 0; yPos < srcHeight; yPos++) {
+		for (int yPos = startRow; yPos < endRow; yPos++) {
 			image.getPixels(0, yPos, srcWidth, buffer, 0);
 			int dstRowIndex = yPos * srcWidth;
 			for (int xPos = 0; xPos < srcWidth; xPos++) {
@@ -450,7 +488,6 @@ void convertMultiRGBToYCbCr(ImageData image) {
 			}
 		}
 	}
-	compress(image, dataYComp, dataCbComp, dataCrComp);
 }
 byte[] convertYToRGB() {
 	int compWidth = frameComponents[componentIds[ID_Y]][CW];
@@ -824,33 +861,27 @@ void emit(int huffCode, int nBits) {
 	if (nBits == 0) {
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
 	}
-	int[] power2m1 = new int[] {
-		1, 3, 7, 15, 31, 63, 127, 255, 511, 1023, 2047, 4095, 8191, 
-		16383, 32767, 65535, 131125
-	};
-	int code = (huffCode & power2m1[nBits - 1]) << (24 - nBits - currentBitCount);
-	byte[] codeBuffer = new byte[4];
-	codeBuffer[0] = (byte)(code & 0xFF);
-	codeBuffer[1] = (byte)((code >> 8) & 0xFF);
-	codeBuffer[2] = (byte)((code >> 16) & 0xFF);
-	codeBuffer[3] = (byte)((code >> 24) & 0xFF);
+	int code = (huffCode & Power2m1[nBits - 1]) << (24 - nBits - currentBitCount);
+	byte code0 = (byte)(code & 0xFF);
+	byte code1 = (byte)((code >> 8) & 0xFF);
+	byte code2 = (byte)((code >> 16) & 0xFF);
 	int abs = nBits - (8 - currentBitCount);
 	if (abs < 0) abs = -abs;
 	if ((abs >> 3) > 0) {
-		currentByte += codeBuffer[2];
+		currentByte += code2;
 		emitByte((byte)currentByte);
-		emitByte(codeBuffer[1]);
-		currentByte = codeBuffer[0];
+		emitByte(code1);
+		currentByte = code0;
 		currentBitCount += nBits - 16;
 	} else {
 		currentBitCount += nBits;
 		if (currentBitCount >= 8) {
-			currentByte += codeBuffer[2];
+			currentByte += code2;
 			emitByte((byte)currentByte);
-			currentByte = codeBuffer[1];
+			currentByte = code1;
 			currentBitCount -= 8;
 		} else {
-			currentByte += codeBuffer[2];
+			currentByte += code2;
 		}
 	}
 }
@@ -941,6 +972,10 @@ void encodeMCUAtXAndY(int xmcu, int ymcu) {
 	}
 }
 void encodeScan() {
+	if (threads > 1) {
+		encodeScanInGroups();
+		return;
+	}
 	for (int ymcu = 0; ymcu < interleavedMcuRows; ymcu++) {
 		for (int xmcu = 0; xmcu < interleavedMcuCols; xmcu++) {
 			encodeMCUAtXAndY(xmcu, ymcu);
@@ -951,6 +986,152 @@ void encodeScan() {
 	}
 	resetOutputBuffer();
 }
+/**
+ * Encode the scan as independent groups of MCU rows, which
+ * are coded concurrently and then written in order, separated
+ * by restart markers. The restart interval must already have
+ * been written using getMcuRowsPerGroup().
+ */
+void encodeScanInGroups() {
+	int groupCount = (interleavedMcuRows + mcuRowsPerGroup - 1) / mcuRowsPerGroup;
+	encodedGroups = new byte[groupCount][];
+	runJob(JOB_ENCODE, groupCount);
+	try {
+		for (int i = 0; i < groupCount; i++) {
+			if (i > 0) {
+				outputStream.write(0xFF);
+				outputStream.write((RST0 + ((i - 1) & 7)) & 0xFF);
+			}
+			outputStream.write(encodedGroups[i]);
+		}
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	encodedGroups = null;
+}
+/**
+ * Answer the entropy coded data of MCU rows startRow to
+ * endRow - 1, as a restart interval on its own: the DC
+ * predictions start from zero and the last byte is padded
+ * with one bits.
+ */
+byte[] encodeMCURows(int startRow, int endRow) {
+	JPEGFileFormat encoder = new JPEGFileFormat();
+	encoder.scanHeader = scanHeader;
+	encoder.frameComponents = frameComponents;
+	encoder.componentIds = componentIds;
+	encoder.imageComponents = imageComponents;
+	encoder.quantizationTables = quantizationTables;
+	encoder.acHuffmanTables = acHuffmanTables;
+	encoder.dcHuffmanTables = dcHuffmanTables;
+	encoder.precedingDCs = new int[4];
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	encoder.outputStream = new LEDataOutputStream(stream);
+	encoder.resetOutputBuffer();
+	encoder.currentByte = 0;
+	encoder.currentBitCount = 0;
+	for (int ymcu = startRow; ymcu < endRow; ymcu++) {
+		for (int xmcu = 0; xmcu < interleavedMcuCols; xmcu++) {
+			encoder.encodeMCUAtXAndY(xmcu, ymcu);
+		}
+	}
+	if (encoder.currentBitCount != 0) {
+		encoder.emitByte((byte)(encoder.currentByte | (0xFF >> encoder.currentBitCount)));
+	}
+	encoder.resetOutputBuffer();
+	return stream.toByteArray();
+}
+/**
+ * Answer the number of MCU rows in each restart interval when
+ * encoding in parallel. There are a few groups per thread so
+ * that the work stays balanced, but each restart interval must
+ * fit in 16 bits.
+ */
+int getMcuRowsPerGroup() {
+	int groupCount = threads * BANDS_PER_THREAD;
+	int rows = Math.max(1, (interleavedMcuRows + groupCount - 1) / groupCount);
+	return Math.max(1, Math.min(rows, 0xFFFF / interleavedMcuCols));
+}
+/**
+ * Answer the number of bands to split the given number of rows
+ * into for a parallel job.
+ */
+int getBandCount(int rows) {
+	return Math.max(1, Math.min(rows, threads * BANDS_PER_THREAD));
+}
+/**
+ * Run the given job for bands 0 to count - 1, using the calling
+ * thread and up to threads - 1 worker threads, and wait for all
+ * of them to complete. The first error raised by a band is
+ * rethrown in the calling thread.
+ */
+void runJob(final int job, final int count) {
+	final int[] nextBand = new int[1];
+	final Throwable[] error = new Throwable[1];
+	Runnable runnable = new Runnable() {
+		public void run() {
+			while (true) {
+				int band;
+				synchronized (nextBand) {
+					if (nextBand[0] >= count || error[0] != null) return;
+					band = nextBand[0]++;
+				}
+				try {
+					runBand(job, band, count);
+				} catch (Throwable e) {
+					synchronized (nextBand) {
+						if (error[0] == null) error[0] = e;
+					}
+				}
+			}
+		}
+	};
+	Thread[] workers = new Thread[Math.min(threads, count) - 1];
+	for (int i = 0; i < workers.length; i++) {
+		workers[i] = new Thread(runnable, "SWT JPEG Encoder"); //$NON-NLS-1$
+		workers[i].start();
+	}
+	runnable.run();
+	for (int i = 0; i < workers.length; i++) {
+		boolean joined = false;
+		while (!joined) {
+			try {
+				workers[i].join();
+				joined = true;
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+	if (error[0] instanceof RuntimeException) throw (RuntimeException)error[0];
+	if (error[0] instanceof Error) throw (Error)error[0];
+	if (error[0] != null) SWT.error(SWT.ERROR_IO, error[0]);
+}
+/**
+ * Perform one band of a parallel job.
+ */
+void runBand(int job, int band, int count) {
+	switch (job) {
+		case JOB_CONVERT: {
+			int rows = encodeImage.height;
+			int startRow = band * rows / count, endRow = (band + 1) * rows / count;
+			convertMultiRGBToYCbCr(encodeImage, encodeComponents[ID_Y], encodeComponents[ID_CB], encodeComponents[ID_CR], startRow, endRow);
+			break;
+		}
+		case JOB_DOWNSAMPLE: {
+			int rows = encodeImage.height / maxV;
+			int startRow = band * rows / count, endRow = (band + 1) * rows / count;
+			downsample(encodeImage.width, encodeComponents[ID_CB], ID_CB, startRow, endRow);
+			downsample(encodeImage.width, encodeComponents[ID_CR], ID_CR, startRow, endRow);
+			break;
+		}
+		case JOB_ENCODE: {
+			int startRow = band * mcuRowsPerGroup;
+			int endRow = Math.min(startRow + mcuRowsPerGroup, interleavedMcuRows);
+			encodedGroups[band] = encodeMCURows(startRow, endRow);
+			break;
+		}
+	}
+}
 void expandImageComponents() {
 	for (int iComp = 0; iComp < nComponents; iComp++) {
 		int[] frameComponent = frameComponents[componentIds[iComp]];
@@ -1362,14 +1543,9 @@ void inverseDCT(int[] dataUnit) {
 	}
 }
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		JPEGStartOfImage soi = new JPEGStartOfImage(stream);
-		stream.unread(soi.reference);
-		return soi.verify();  // we no longer check for appN
-	} catch (Exception e) {
-		return false;
-	}
+boolean isFileFormat(byte[] header) {
+	JPEGStartOfImage soi = new JPEGStartOfImage(header);
+	return soi.verify();  // we no longer check for appN
 }
 boolean isZeroInColumn(int[] dataUnit, int col) {
 	return dataUnit[col + 8] == 0 && dataUnit[col + 16] == 0
@@ -1607,6 +1783,32 @@ void processRestartInterval() {
 	precedingDCs = new int[4];
 	eobrun = 0;
 }
+/**
+ * Skip the markers preceding the frame header, and read it.
+ */
+@Override
+ImageInfo probeByteStream() {
+	JPEGStartOfImage soi = new JPEGStartOfImage(inputStream);
+	if (!soi.verify()) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	while (true) {
+		JPEGSegment jpegSegment = seekUnspecifiedMarker(inputStream);
+		if (jpegSegment == null) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		if (new JPEGFrameHeader(jpegSegment.reference).verify()) {
+			JPEGFrameHeader sof = new JPEGFrameHeader(inputStream);
+			int depth = sof.getNumberOfImageComponents() == 1 ? 8 : 24;
+			return new ImageInfo(SWT.IMAGE_JPEG, sof.getSamplesPerLine(), sof.getNumberOfLines(), depth, 1);
+		}
+		switch (jpegSegment.getSegmentMarker()) {
+			case SOI:
+			case EOI:
+			case SOS:
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+				break;
+			default:
+				skipSegmentFrom(inputStream);
+		}
+	}
+}
 /* Process all markers until a frame header, scan header, or EOI is found. */
 JPEGSegment processTables() {
 	while (true) {
@@ -1867,6 +2069,14 @@ void unloadIntoByteStream(ImageLoader loader) {
 			}
 		}
 	}
+	threads = loader.parallelism;
+	if (threads > 1) {
+		mcuRowsPerGroup = getMcuRowsPerGroup();
+		JPEGRestartInterval dri = new JPEGRestartInterval(mcuRowsPerGroup * interleavedMcuCols);
+		if (!dri.writeToStream(outputStream)) {
+			SWT.error(SWT.ERROR_IO);
+		}
+	}
 	precedingDCs = new int[4];
 	scanHeader = new JPEGScanHeader(new byte[14]);
 	scanHeader.setSegmentMarker(SOS);
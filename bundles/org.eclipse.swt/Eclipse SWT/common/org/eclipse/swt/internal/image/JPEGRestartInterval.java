@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,13 @@ package org.eclipse.swt.internal.image;
 
 final class JPEGRestartInterval extends JPEGFixedSizeSegment {
 
+	public JPEGRestartInterval(int restartInterval) {
+		super();
+		reference[2] = 0;
+		reference[3] = (byte)getSegmentLength();
+		setRestartInterval(restartInterval);
+	}
+	
 	public JPEGRestartInterval(LEDataInputStream byteStream) {
 		super(byteStream);
 	}
@@ -25,6 +32,11 @@ final class JPEGRestartInterval extends JPEGFixedSizeSegment {
 	public int getRestartInterval() {
 		return ((reference[4] & 0xFF) << 8 | (reference[5] & 0xFF));
 	}
+	
+	public void setRestartInterval(int restartInterval) {
+		reference[4] = (byte)((restartInterval & 0xFF00) >> 8);
+		reference[5] = (byte)(restartInterval & 0xFF);
+	}
 
 	@Override
 	public int fixedSize() {
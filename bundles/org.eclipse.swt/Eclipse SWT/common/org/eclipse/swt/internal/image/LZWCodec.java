@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,12 +20,15 @@ final class LZWCodec {
 		imageWidth, imageHeight, imageX, imageY, pass, line, codeMask;
 	byte[] block, lineArray;
 	int[] stack, suffix, prefix;
-	LZWNode[] nodeStack;
+	int[] hashKeys, hashCodes;
 	LEDataInputStream inputStream;
 	LEDataOutputStream outputStream;
 	ImageData image;
 	ImageLoader loader;
 	boolean interlaced;
+	/* A prime a little larger than the 4096 codes, as used by compress */
+	static final int HASH_SIZE = 5003;
+	static final int HASH_SHIFT = 4;
 	static final int[] MASK_TABLE = new int[] {
 		0x1, 0x3, 0x7, 0xF, 0x1F, 0x3F, 0x7F,
 		0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF
@@ -149,52 +152,30 @@ public void encode(LEDataOutputStream byteStream, ImageData image) {
 }
 /**
  * Encoding loop broken out to allow early return.
+ * <p>
+ * The string table is an open addressing hash table, probed with
+ * double hashing, which maps a prefix code and the pixel following
+ * it to the code of the longer string. Nothing is allocated per
+ * string, and clearing the table only resets the keys.
+ * </p>
  */
 int encodeLoop() {
-	int pixel = nextPixel();
-	boolean found;
-	LZWNode node;
-	while (true) {
-		int currentPrefix = pixel;
-		node = nodeStack[currentPrefix];
-		found = true;
-		pixel = nextPixel();
-		if (pixel < 0)
-			return currentPrefix;
-		while (found && (node.children != null)) {
-			node = node.children;
-			while (found && (node.suffix != pixel)) {
-				if (pixel < node.suffix) {
-					if (node.left == null) {
-						node.left = new LZWNode();
-						found = false;
-					}
-					node = node.left;
-				} else {
-					if (node.right == null) {
-						node.right = new LZWNode();
-						found = false;
-					}
-					node = node.right;
-				}
-			}
-			if (found) {
-				currentPrefix = node.code;
-				pixel = nextPixel();
-				if (pixel < 0)
-					return currentPrefix;
+	int currentPrefix = nextPixel();
+	int pixel;
+	next: while ((pixel = nextPixel()) >= 0) {
+		int key = (pixel << 12) + currentPrefix;
+		int index = (pixel << HASH_SHIFT) ^ currentPrefix;
+		int step = index == 0 ? 1 : HASH_SIZE - index;
+		while (hashKeys[index] != -1) {
+			if (hashKeys[index] == key) {
+				currentPrefix = hashCodes[index];
+				continue next;
 			}
+			index -= step;
+			if (index < 0) index += HASH_SIZE;
 		}
-		if (found) {
-			node.children = new LZWNode();
-			node = node.children;
-		}
-		node.children = null;
-		node.left = null;
-		node.right = null;
-		node.code = currentSlot;
-		node.prefix = currentPrefix;
-		node.suffix = pixel;
+		hashKeys[index] = key;
+		hashCodes[index] = currentSlot;
 		nextPutCode(currentPrefix);
 		currentSlot++;
 		// Off by one?
@@ -206,13 +187,22 @@ int encodeLoop() {
 			}
 		} else {
 			nextPutCode(clearCode);
-			for (int i = 0; i < nodeStack.length; i++)
-				nodeStack[i].children = null;
+			clearHashKeys();
 			codeSize = bitsPerPixel + 1;
 			codeMask = MASK_TABLE[codeSize - 1];
 			currentSlot = newCodes;
 			topSlot = 1 << codeSize;
 		}
+		currentPrefix = pixel;
+	}
+	return currentPrefix;
+}
+/**
+ * Empty the string table used for encoding.
+ */
+void clearHashKeys() {
+	for (int i = 0; i < HASH_SIZE; i++) {
+		hashKeys[i] = -1;
 	}
 }
 /**
@@ -256,14 +246,9 @@ void initializeForEncoding() {
 	blockSize = 255;
 	block = new byte[blockSize];
 	block[0] = (byte)(blockSize - 1);
-	nodeStack = new LZWNode[1 << bitsPerPixel];
-	for (int i = 0; i < nodeStack.length; i++) {
-		LZWNode node = new LZWNode();
-		node.code = i + 1;
-		node.prefix = -1;
-		node.suffix = i + 1;
-		nodeStack[i] = node;
-	}
+	hashKeys = new int[HASH_SIZE];
+	hashCodes = new int[HASH_SIZE];
+	clearHashKeys();
 	imageWidth = image.width;
 	imageHeight = image.height;
 	imageY = -1;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,16 +21,9 @@ public final class OS2BMPFileFormat extends FileFormat {
 	int width, height, bitCount;
 
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		byte[] header = new byte[18];
-		stream.read(header);
-		stream.unread(header);
-		int infoHeaderSize = (header[14] & 0xFF) | ((header[15] & 0xFF) << 8) | ((header[16] & 0xFF) << 16) | ((header[17] & 0xFF) << 24);
-		return header[0] == 0x42 && header[1] == 0x4D && infoHeaderSize == BMPHeaderFixedSize;
-	} catch (Exception e) {
-		return false;
-	}
+boolean isFileFormat(byte[] header) {
+	int infoHeaderSize = (header[14] & 0xFF) | ((header[15] & 0xFF) << 8) | ((header[16] & 0xFF) << 16) | ((header[17] & 0xFF) << 24);
+	return header[0] == 0x42 && header[1] == 0x4D && infoHeaderSize == BMPHeaderFixedSize;
 }
 byte[] loadData(byte[] infoHeader) {
 	int stride = (width * bitCount + 7) / 8;
@@ -108,6 +101,19 @@ ImageData[] loadFromByteStream() {
 			0)
 	};
 }
+/**
+ * Read the file header and the info header of the bitmap.
+ */
+@Override
+ImageInfo probeByteStream() throws IOException {
+	loadFileHeader();
+	byte[] infoHeader = new byte[BMPHeaderFixedSize];
+	if (inputStream.read(infoHeader) != infoHeader.length) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8);
+	int height = (infoHeader[6] & 0xFF) | ((infoHeader[7] & 0xFF) << 8);
+	int bitCount = (infoHeader[10] & 0xFF) | ((infoHeader[11] & 0xFF) << 8);
+	return new ImageInfo(SWT.IMAGE_OS2_BMP, width, height, bitCount, 1);
+}
 PaletteData loadPalette(byte[] infoHeader) {
 	if (bitCount <= 8) {
 		int numColors = 1 << bitCount;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -27,6 +27,15 @@ public final class PNGFileFormat extends FileFormat {
 	byte headerByte1;
 	byte headerByte2;
 	int adler;
+	
+	/*
+	 * Whether the listeners are notified as the rows of a
+	 * non-interlaced image are decoded, which is the case when
+	 * the image is loaded with loadNext(), and the number of rows
+	 * decoded between two notifications.
+	 */
+	boolean progressive;
+	static final int ROWS_PER_EVENT = 16;
 
 /**
  * Skip over signature data. This has already been
@@ -47,8 +56,16 @@ ImageData[] loadFromByteStream() {
 		headerChunk = chunkReader.getIhdrChunk();
 		int width = headerChunk.getWidth(), height = headerChunk.getHeight();
 		if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
-		int imageSize = getAlignedBytesPerRow() * height;
-		data = new byte[imageSize];		
+		/*
+		* Non-interlaced images are unfiltered one row at a time
+		* directly into their final layout, so only interlaced
+		* images need a buffer for the raw (unconverted) pixels.
+		*/
+		boolean interlaced = headerChunk.getInterlaceMethod() != PngIhdrChunk.INTERLACE_METHOD_NONE;
+		if (interlaced) {
+			int imageSize = getAlignedBytesPerRow() * height;
+			data = new byte[imageSize];
+		}
 		imageData = ImageData.internal_new(
 			width,
 			height,
@@ -65,7 +82,7 @@ ImageData[] loadFromByteStream() {
 			0,
 			0,
 			0,
-			0);		
+			0);
 			
 		if (headerChunk.usesDirectColor()) {
 			imageData.palette = headerChunk.getPaletteData();
@@ -75,13 +92,41 @@ ImageData[] loadFromByteStream() {
 		while (chunkReader.hasMoreChunks()) {
 			readNextChunk(chunkReader);
 		}
-						
+
 		return new ImageData[] {imageData};
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
 		return null;
 	}
 }
+/**
+ * Prepare to load the image in loadNext(), which is where it
+ * is decoded, so that the rows can be reported as they are.
+ */
+@Override
+void openByteStream() {
+	imageIndex = 0;
+}
+/**
+ * Load the image the first time, notifying the listeners
+ * as bands of rows are decoded.
+ */
+@Override
+ImageData loadNextFromByteStream() {
+	if (imageIndex > 0) return null;
+	imageIndex++;
+	progressive = true;
+	return loadFromByteStream()[0];
+}
+/**
+ * Read the signature and the IHDR chunk of the PNG image.
+ */
+@Override
+ImageInfo probeByteStream() throws IOException {
+	readSignature();
+	PngIhdrChunk header = new PngChunkReader(inputStream).getIhdrChunk();
+	return new ImageInfo(SWT.IMAGE_PNG, header.getWidth(), header.getHeight(), header.getSwtBitsPerPixel(), 1);
+}
 /**
  * Read and handle the next chunk of data from the 
  * PNG file.
@@ -148,23 +193,16 @@ void unloadIntoByteStream(ImageLoader loader) {
 	encoder.encode(outputStream);
 }
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		byte[] signature = new byte[SIGNATURE_LENGTH];
-		stream.read(signature);
-		stream.unread(signature);
-		if ((signature[0] & 0xFF) != 137) return false; //137
-		if ((signature[1] & 0xFF) != 80) return false; //P
-		if ((signature[2] & 0xFF) != 78) return false; //N
-		if ((signature[3] & 0xFF) != 71) return false; //G
-		if ((signature[4] & 0xFF) != 13) return false; //<RETURN>
-		if ((signature[5] & 0xFF) != 10) return false; //<LINEFEED>
-		if ((signature[6] & 0xFF) != 26) return false; //<CTRL/Z>
-		if ((signature[7] & 0xFF) != 10) return false; //<LINEFEED>		
-		return true;
-	} catch (Exception e) {
-		return false;
-	}
+boolean isFileFormat(byte[] signature) {
+	if ((signature[0] & 0xFF) != 137) return false; //137
+	if ((signature[1] & 0xFF) != 80) return false; //P
+	if ((signature[2] & 0xFF) != 78) return false; //N
+	if ((signature[3] & 0xFF) != 71) return false; //G
+	if ((signature[4] & 0xFF) != 13) return false; //<RETURN>
+	if ((signature[5] & 0xFF) != 10) return false; //<LINEFEED>
+	if ((signature[6] & 0xFF) != 26) return false; //<CTRL/Z>
+	if ((signature[7] & 0xFF) != 10) return false; //<LINEFEED>		
+	return true;
 }
 /**
  * SWT does not support 16-bit depths. If this image uses
@@ -279,6 +317,11 @@ void setPixelData(byte[] data, ImageData imageData) {
 			*/
 			if (headerChunk.getBitDepth() > 8) srcBytesPerLine /= 2;
 			if (destBytesPerLine != srcBytesPerLine) {
+				/*
+				* The raw pixels are kept for the next passes of an
+				* interlaced image, so they must not be overwritten.
+				*/
+				if (imageData.data == this.data) imageData.data = new byte[destBytesPerLine * height];
 				for (int y = 0; y < height; y++) {
 					System.arraycopy(data, y * srcBytesPerLine, imageData.data, y * destBytesPerLine, srcBytesPerLine);
 				}
@@ -463,17 +506,23 @@ void fireInterlacedFrameEvent(int frameCount) {
 /**
  * Read the pixel data for a non-interlaced image from the
  * data stream.
- * Update the imageData to reflect the new data.
+ * Each row is converted into the imageData as soon as it
+ * has been unfiltered. When the image is loaded progressively,
+ * the listeners are notified every ROWS_PER_EVENT rows.
  */
 void readNonInterlacedImage(InputStream inputStream) throws IOException {
-	int dataOffset = 0;
-	int alignedBytesPerRow = getAlignedBytesPerRow();
 	int bytesPerRow = getBytesPerRow();
 	byte[] row1 = new byte[bytesPerRow];
 	byte[] row2 = new byte[bytesPerRow];
 	byte[] currentRow = row1;	
 	byte[] lastRow = row2;
+	int width = headerChunk.getWidth();
 	int height = headerChunk.getHeight();
+	if (hasAlphaData() && (imageData.alphaData == null || imageData.alphaData.length < width * imageData.height)) {
+		imageData.alphaData = new byte[width * imageData.height];
+	}
+	boolean notify = progressive && loader.hasListeners();
+	int incrementCount = 0;
 	for (int row = 0; row < height; row++) {
 		byte filterType = (byte)inputStream.read();
 		int read = 0;
@@ -481,12 +530,121 @@ void readNonInterlacedImage(InputStream inputStream) throws IOException {
 			read += inputStream.read(currentRow, read, bytesPerRow - read);
 		}
 		filterRow(currentRow, lastRow, filterType);
-		System.arraycopy(currentRow, 0, data, dataOffset, bytesPerRow);
-		dataOffset += alignedBytesPerRow;
+		setRowValues(currentRow, imageData, row);
+		if (notify && (row + 1) % ROWS_PER_EVENT == 0 && row + 1 < height) {
+			fireRowsEvent(row + 1, incrementCount++);
+		}
 		currentRow = (currentRow == row1) ? row2 : row1;
 		lastRow = (lastRow == row1) ? row2 : row1;
 	}
-	setImageDataValues(data, imageData);
+	if (notify) {
+		loader.notifyListeners(new ImageLoaderEvent(loader, imageData, incrementCount, true));
+	}
+}
+/**
+ * Answer whether the decoded image carries per pixel alpha
+ * values, either from an alpha channel or from a tRNS chunk
+ * with partially transparent palette entries.
+ */
+boolean hasAlphaData() {
+	switch (headerChunk.getColorType()) {
+		case PngIhdrChunk.COLOR_TYPE_GRAYSCALE_WITH_ALPHA:
+		case PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA:
+			return true;
+		case PngIhdrChunk.COLOR_TYPE_PALETTE:
+			return alphaPalette != null;
+		default:
+			return false;
+	}
+}
+/**
+ * Fire an event to let listeners know that the first rows
+ * of the image have been decoded. The event's image data
+ * shares the buffers of the image being decoded and only
+ * covers the decoded rows, so no pixels are copied.
+ */
+void fireRowsEvent(int rows, int incrementCount) {
+	ImageData image = ImageData.internal_new(
+		imageData.width,
+		rows,
+		imageData.depth,
+		imageData.palette,
+		imageData.scanlinePad,
+		imageData.data,
+		0,
+		null,
+		imageData.alphaData,
+		-1,
+		imageData.transparentPixel,
+		imageData.type,
+		0,
+		0,
+		0,
+		0);
+	loader.notifyListeners(new ImageLoaderEvent(loader, image, incrementCount, false));
+}
+/**
+ * Convert one unfiltered row of PNG data into row y of the
+ * given image. This performs the same 16-bit, grayscale and
+ * alpha conversions as setImageDataValues(), but on a single
+ * row, so that no intermediate copy of the image is needed.
+ */
+void setRowValues(byte[] row, ImageData image, int y) {
+	int width = image.width;
+	byte[] dest = image.data;
+	int destIndex = y * image.bytesPerLine;
+	byte[] alphaData = image.alphaData;
+	int alphaIndex = y * width;
+	int sampleSize = headerChunk.getBitDepth() > 8 ? 2 : 1;
+	switch (headerChunk.getColorType()) {
+		case PngIhdrChunk.COLOR_TYPE_GRAYSCALE_WITH_ALPHA: {
+			int srcIndex = 0;
+			for (int x = 0; x < width; x++) {
+				byte grey = row[srcIndex];
+				dest[destIndex + 0] = grey;
+				dest[destIndex + 1] = grey;
+				dest[destIndex + 2] = grey;
+				alphaData[alphaIndex++] = row[srcIndex + sampleSize];
+				srcIndex += 2 * sampleSize;
+				destIndex += 3;
+			}
+			break;
+		}
+		case PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA: {
+			int srcIndex = 0;
+			for (int x = 0; x < width; x++) {
+				dest[destIndex + 0] = row[srcIndex];
+				dest[destIndex + 1] = row[srcIndex + sampleSize];
+				dest[destIndex + 2] = row[srcIndex + 2 * sampleSize];
+				alphaData[alphaIndex++] = row[srcIndex + 3 * sampleSize];
+				srcIndex += 4 * sampleSize;
+				destIndex += 3;
+			}
+			break;
+		}
+		case PngIhdrChunk.COLOR_TYPE_PALETTE: {
+			System.arraycopy(row, 0, dest, destIndex, row.length);
+			if (alphaPalette != null) {
+				int bitsPerPixel = headerChunk.getBitDepth();
+				int valueMask = (1 << bitsPerPixel) - 1;
+				for (int x = 0; x < width; x++) {
+					int bit = x * bitsPerPixel;
+					int shift = 8 - bitsPerPixel - (bit & 7);
+					int index = (row[bit >> 3] >> shift) & valueMask;
+					alphaData[alphaIndex++] = alphaPalette[index];
+				}
+			}
+			break;
+		}
+		case PngIhdrChunk.COLOR_TYPE_RGB:
+		default:
+			if (sampleSize == 1) {
+				System.arraycopy(row, 0, dest, destIndex, row.length);
+			} else {
+				compress16BitDepthTo8BitDepth(row, 0, dest, destIndex, row.length / 2);
+			}
+			break;
+	}
 }
 /**
  * SWT does not support 16-bit depth color formats.
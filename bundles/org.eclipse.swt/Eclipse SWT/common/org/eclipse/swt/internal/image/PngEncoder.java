@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -236,36 +236,61 @@ void writeTransparency() {
 
 void writeImageData() throws IOException {
 
-	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
-	OutputStream os = null;
+	/*
+	* The compression setting trades speed for size. Fast does
+	* not filter the rows, balanced picks a filter for each row
+	* using the minimum sum of absolute differences heuristic, and
+	* smallest also tries unfiltered rows at the best compression
+	* level and keeps whichever result is smaller. Palette images
+	* rarely benefit from filtering, so balanced leaves them as is.
+	*/
+	byte[] compressed;
 	switch (loader.compression) {
 	case 0:
-		os = Compatibility.newDeflaterOutputStream(baos, NO_COMPRESSION);
+		compressed = compressImageData(NO_COMPRESSION, false);
 		break;
 	case 1:
-		os = Compatibility.newDeflaterOutputStream(baos, BEST_SPEED);
+		compressed = compressImageData(BEST_SPEED, false);
 		break;
 	case 3:
-		os = Compatibility.newDeflaterOutputStream(baos, BEST_COMPRESSION);
+		compressed = compressImageData(BEST_COMPRESSION, true);
+		byte[] unfiltered = compressImageData(BEST_COMPRESSION, false);
+		if (unfiltered.length < compressed.length) compressed = unfiltered;
 		break;
 	default:
-		os = Compatibility.newDeflaterOutputStream(baos, DEFAULT_COMPRESSION);
+		compressed = compressImageData(DEFAULT_COMPRESSION, colorType != 3);
 		break;
 	}
+	
+	writeChunk(TAG_IDAT, compressed);
+
+}
+
+byte[] compressImageData(int level, boolean adaptive) throws IOException {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+	OutputStream os = Compatibility.newDeflaterOutputStream(baos, level);
 	if (os == null) os = baos; // returns null for J2ME
 	
+	int bytesPerPixel = colorType == 3 ? 1 : (colorType == 6 ? 4 : 3);
+	byte[] lineBytes = new byte[width * bytesPerPixel];
+	byte[] previousLineBytes = new byte[lineBytes.length];
+	byte[][] filtered = null;
+	if (adaptive) {
+		filtered = new byte[5][lineBytes.length + 1];
+	}
+	
 	if (colorType == 3) {
 	
-		byte[] lineData = new byte[width];
-		
 		for (int y = 0; y < height; y++) {
 			
-			int filter = 0;
-			os.write(filter);
+			data.getPixels(0, y, width, lineBytes, 0);
 			
-			data.getPixels(0, y, width, lineData, 0);
+			writeLine(os, lineBytes, previousLineBytes, bytesPerPixel, filtered);
 			
-			os.write(lineData);
+			byte[] temp = previousLineBytes;
+			previousLineBytes = lineBytes;
+			lineBytes = temp;
 		
 		}
 	
@@ -286,13 +311,8 @@ void writeImageData() throws IOException {
 		int blueShift = data.palette.blueShift;
 		int blueMask = data.palette.blueMask;
 		
-		byte[] lineBytes = new byte[width * (colorType == 6 ? 4 : 3)];
-		
 		for (int y = 0; y < height; y++) {
 		
-			int filter = 0;
-			os.write(filter);
-			
 			data.getPixels(0, y, width, lineData, 0);
 			
 			if (colorType == 6) {
@@ -320,7 +340,11 @@ void writeImageData() throws IOException {
 			
 			}
 			
-			os.write(lineBytes);
+			writeLine(os, lineBytes, previousLineBytes, bytesPerPixel, filtered);
+			
+			byte[] temp = previousLineBytes;
+			previousLineBytes = lineBytes;
+			lineBytes = temp;
 			
 		}
 	
@@ -336,7 +360,118 @@ void writeImageData() throws IOException {
 		compressed = deflater.deflate(compressed);
 	}
 	
-	writeChunk(TAG_IDAT, compressed);
+	return compressed;
+
+}
+
+/**
+ * Write one line of image data preceded by its filter type.
+ * When filtered buffers are supplied, the line is filtered
+ * with each of the five PNG filter types and the result whose
+ * bytes have the smallest sum of absolute (signed) values is
+ * written, since it usually compresses best. Otherwise the
+ * line is written unfiltered.
+ */
+void writeLine(OutputStream os, byte[] line, byte[] previousLine, int bytesPerPixel, byte[][] filtered) throws IOException {
+
+	if (filtered == null) {
+		os.write(PngIhdrChunk.FILTER_NONE);
+		os.write(line);
+		return;
+	}
+	
+	int bestFilter = 0;
+	int bestSum = Integer.MAX_VALUE;
+	for (int filter = PngIhdrChunk.FILTER_NONE; filter <= PngIhdrChunk.FILTER_PAETH; filter++) {
+		int sum = filterLine(line, previousLine, bytesPerPixel, filter, filtered[filter], bestSum);
+		if (sum < bestSum) {
+			bestSum = sum;
+			bestFilter = filter;
+		}
+	}
+	os.write(filtered[bestFilter]);
+
+}
+
+/**
+ * Filter the line with the given filter type into the result
+ * buffer, whose first byte receives the filter type. Answer the
+ * sum of the absolute values of the filtered bytes, or give up
+ * and answer the limit once the sum reaches it.
+ */
+static int filterLine(byte[] line, byte[] previousLine, int bytesPerPixel, int filter, byte[] result, int limit) {
+
+	result[0] = (byte) filter;
+	int length = line.length;
+	int sum = 0;
+	switch (filter) {
+	
+		case PngIhdrChunk.FILTER_NONE:
+			for (int i = 0; i < length; i++) {
+				byte value = line[i];
+				result[i + 1] = value;
+				sum += value < 0 ? -value : value;
+			}
+			break;
+			
+		case PngIhdrChunk.FILTER_SUB:
+			for (int i = 0; i < length; i++) {
+				int left = i < bytesPerPixel ? 0 : line[i - bytesPerPixel] & 0xFF;
+				byte value = (byte) ((line[i] & 0xFF) - left);
+				result[i + 1] = value;
+				sum += value < 0 ? -value : value;
+				if (sum >= limit) return limit;
+			}
+			break;
+			
+		case PngIhdrChunk.FILTER_UP:
+			for (int i = 0; i < length; i++) {
+				byte value = (byte) ((line[i] & 0xFF) - (previousLine[i] & 0xFF));
+				result[i + 1] = value;
+				sum += value < 0 ? -value : value;
+				if (sum >= limit) return limit;
+			}
+			break;
+			
+		case PngIhdrChunk.FILTER_AVERAGE:
+			for (int i = 0; i < length; i++) {
+				int left = i < bytesPerPixel ? 0 : line[i - bytesPerPixel] & 0xFF;
+				int above = previousLine[i] & 0xFF;
+				byte value = (byte) ((line[i] & 0xFF) - ((left + above) >> 1));
+				result[i + 1] = value;
+				sum += value < 0 ? -value : value;
+				if (sum >= limit) return limit;
+			}
+			break;
+			
+		case PngIhdrChunk.FILTER_PAETH:
+			for (int i = 0; i < length; i++) {
+				int left = i < bytesPerPixel ? 0 : line[i - bytesPerPixel] & 0xFF;
+				int aboveLeft = i < bytesPerPixel ? 0 : previousLine[i - bytesPerPixel] & 0xFF;
+				int above = previousLine[i] & 0xFF;
+				
+				int a = Math.abs(above - aboveLeft);
+				int b = Math.abs(left - aboveLeft);
+				int c = Math.abs(left - aboveLeft + above - aboveLeft);
+				
+				int predictor;
+				if (a <= b && a <= c) {
+					predictor = left;
+				} else if (b <= c) {
+					predictor = above;
+				} else {
+					predictor = aboveLeft;
+				}
+				
+				byte value = (byte) ((line[i] & 0xFF) - predictor);
+				result[i + 1] = value;
+				sum += value < 0 ? -value : value;
+				if (sum >= limit) return limit;
+			}
+			break;
+	
+	}
+	return sum;
 
 }
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ package org.eclipse.swt.internal.image;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
+import org.eclipse.swt.internal.*;
 import java.io.*;
 
 final class TIFFDirectory {
@@ -21,6 +22,7 @@ final class TIFFDirectory {
 	boolean isLittleEndian;
 	ImageLoader loader;
 	int depth;
+	PaletteData palette;
 	
 	/* Directory fields */
 	int subfileType;
@@ -35,6 +37,7 @@ final class TIFFDirectory {
 	int[] stripByteCounts;
 	int t4Options;
 	int colorMapOffset;
+	int predictor;
 	
 	/* Encoder fields */
 	ImageData image;
@@ -63,6 +66,7 @@ final class TIFFDirectory {
 	static final short TAG_ResolutionUnit = 296;
 	static final short TAG_Software = 305;
 	static final short TAG_DateTime = 306;
+	static final short TAG_Predictor = 317;
 	static final short TAG_ColorMap = 320;
 	
 	static final int TYPE_BYTE = 1;
@@ -81,7 +85,15 @@ final class TIFFDirectory {
 	/* Different compression schemes */
 	static final int COMPRESSION_NONE = 1;
 	static final int COMPRESSION_CCITT_3_1 = 2;
+	static final int COMPRESSION_CCITT_T4 = 3;
+	static final int COMPRESSION_LZW = 5;
+	static final int COMPRESSION_ADOBE_DEFLATE = 8;
 	static final int COMPRESSION_PACKBITS = 32773;
+	static final int COMPRESSION_DEFLATE = 32946;
+	
+	/* Predictors */
+	static final int PREDICTOR_NONE = 1;
+	static final int PREDICTOR_HORIZONTAL = 2;
 	
 	static final int IFD_ENTRY_SIZE = 12;
 	
@@ -151,35 +163,90 @@ void getEntryValue(int type, byte[] buffer, int index, int[] values) throws IOEx
 
 void decodePixels(ImageData image) throws IOException {
 	/* Each row is byte aligned */ 
-	byte[] imageData = new byte[(imageWidth * depth + 7) / 8 * imageLength];
-	image.data = imageData;
-	int destIndex = 0;
+	byte[] imageData = image.data;
 	int length = stripOffsets.length;
 	for (int i = 0; i < length; i++) {
-		/* Read a strip */
-		byte[] data = new byte[stripByteCounts[i]];
-		file.seek(stripOffsets[i]);
-		file.read(data);
-		if (compression == COMPRESSION_NONE) {
-			System.arraycopy(data, 0, imageData, destIndex, data.length);
-			destIndex += data.length;
-		} else if (compression == COMPRESSION_PACKBITS) {
-			destIndex += decodePackBits(data, imageData, destIndex);
-		} else if (compression == COMPRESSION_CCITT_3_1 || compression == 3) {
-			TIFFModifiedHuffmanCodec codec = new TIFFModifiedHuffmanCodec();
-			int nRows = rowsPerStrip;
-			if (i == length -1) {
-				int n = imageLength % rowsPerStrip;
-				if (n != 0) nRows = n;
-			}
-			destIndex += codec.decode(data, imageData, destIndex, imageWidth, nRows);
-		}
+		decodeStrip(i, imageData, getStripOffset(i));
 		if (loader.hasListeners()) {
 			loader.notifyListeners(new ImageLoaderEvent(loader, image, i, i == length - 1));
 		}
 	}
 }
 
+/**
+ * Reads strip <code>i</code> and decodes it into <code>dest</code>
+ * at <code>destIndex</code>.
+ */
+void decodeStrip(int i, byte[] dest, int destIndex) throws IOException {
+	int rowSize = (imageWidth * depth + 7) / 8;
+	int nRows = Math.min(getStripRows(), imageLength - i * getStripRows());
+	int stripSize = Math.min(rowSize * nRows, dest.length - destIndex);
+	if (stripSize <= 0) return;
+	/* Read a strip */
+	byte[] data = new byte[stripByteCounts[i]];
+	file.seek(stripOffsets[i]);
+	file.read(data);
+	switch (compression) {
+		case COMPRESSION_NONE:
+			System.arraycopy(data, 0, dest, destIndex, Math.min(data.length, stripSize));
+			break;
+		case COMPRESSION_PACKBITS:
+			decodePackBits(data, dest, destIndex);
+			break;
+		case COMPRESSION_CCITT_3_1:
+		case COMPRESSION_CCITT_T4: {
+			TIFFModifiedHuffmanCodec codec = new TIFFModifiedHuffmanCodec();
+			codec.decode(data, dest, destIndex, imageWidth, nRows);
+			break;
+		}
+		case COMPRESSION_LZW: {
+			TIFFLZWCodec codec = new TIFFLZWCodec();
+			codec.decode(data, dest, destIndex, stripSize);
+			break;
+		}
+		case COMPRESSION_DEFLATE:
+		case COMPRESSION_ADOBE_DEFLATE:
+			decodeDeflate(data, dest, destIndex, stripSize);
+			break;
+	}
+	if (predictor == PREDICTOR_HORIZONTAL) {
+		/* Each sample is stored as the difference with the same sample of the pixel on its left */
+		int bytesPerPixel = depth / 8;
+		for (int y = 0; y < nRows; y++) {
+			int start = destIndex + y * rowSize;
+			int end = Math.min(start + rowSize, destIndex + stripSize);
+			for (int index = start + bytesPerPixel; index < end; index++) {
+				dest[index] += dest[index - bytesPerPixel];
+			}
+		}
+	}
+}
+
+/* Deflate decoder */
+void decodeDeflate(byte[] src, byte[] dest, int offsetDest, int maxLength) throws IOException {
+	InputStream stream = new ByteArrayInputStream(src);
+	InputStream inflaterStream = Compatibility.newInflaterInputStream(stream);
+	if (inflaterStream != null) {
+		stream = inflaterStream;
+	} else {
+		stream = new PngDecodingDataStream(stream);
+	}
+	int n = 0;
+	while (n < maxLength) {
+		int cnt = stream.read(dest, offsetDest + n, maxLength - n);
+		if (cnt <= 0) break;
+		n += cnt;
+	}
+}
+
+int getStripOffset(int i) {
+	return i * getStripRows() * ((imageWidth * depth + 7) / 8);
+}
+
+int getStripRows() {
+	return Math.min(rowsPerStrip, imageLength);
+}
+
 PaletteData getColorMap() throws IOException {
 	int numColors = 1 << bitsPerSample[0];
 	/* R, G, B entries are 16 bit wide (2 bytes) */
@@ -413,6 +480,11 @@ void parseEntries(byte[] buffer) throws IOException {
 				/* Ignored */
 				break;
 			}
+			case TAG_Predictor: {
+				predictor = getEntryValue(type, buffer, offset);
+				if (predictor != PREDICTOR_NONE && predictor != PREDICTOR_HORIZONTAL) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+				break;
+			}
 			case TAG_ColorMap: {
 				if (type != TYPE_SHORT) SWT.error(SWT.ERROR_INVALID_IMAGE);
 				/* Get the offset of the colorMap (use TYPE_LONG) */
@@ -423,11 +495,16 @@ void parseEntries(byte[] buffer) throws IOException {
 	}
 }
 
-public ImageData read(int [] nextIFDOffset) throws IOException {
+/**
+ * Reads the entries of the directory, and the palette they refer
+ * to, without reading any strip.
+ */
+void readDirectory(int [] nextIFDOffset) throws IOException {
 	/* Set TIFF default values */
 	bitsPerSample = new int[] {1};
 	colorMapOffset = NO_VALUE;
 	compression = 1;
+	predictor = PREDICTOR_NONE;
 	imageLength = NO_VALUE;
 	imageWidth = NO_VALUE;
 	photometricInterpretation = NO_VALUE;
@@ -446,7 +523,7 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 	nextIFDOffset[0] = toInt(buffer2, 0, TYPE_LONG);
 	parseEntries(buffer);
 	
-	PaletteData palette = null;
+	palette = null;
 	depth = 0;
 	switch (photometricInterpretation) {
 		case 0:
@@ -475,8 +552,20 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 			SWT.error(SWT.ERROR_INVALID_IMAGE);
 		}
 	}
+	if (predictor == PREDICTOR_HORIZONTAL) {
+		/* Differencing is only supported for 8 bit samples */
+		for (int i = 0; i < bitsPerSample.length; i++) {
+			if (bitsPerSample[i] != 8) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+		}
+	}
+}
 
-	ImageData image = ImageData.internal_new(
+/**
+ * Answers a blank image with the size, depth and palette described
+ * by the directory.
+ */
+ImageData createImage() {
+	return ImageData.internal_new(
 			imageWidth,
 			imageLength, 
 			depth,
@@ -493,8 +582,6 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 			0,
 			0,
 			0);
-	decodePixels(image);
-	return image;
 }
 
 int toInt(byte[] buffer, int i, int type) {
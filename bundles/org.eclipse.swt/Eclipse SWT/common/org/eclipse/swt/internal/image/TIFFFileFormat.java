@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,58 +18,104 @@ import java.io.*;
 /**
  * Baseline TIFF decoder revision 6.0
  * Extension T4-encoding CCITT T.4 1D
+ * Extension LZW and Deflate compression with horizontal differencing
  */
 public final class TIFFFileFormat extends FileFormat {
+	
+	/* The directories describing the pages */
+	TIFFDirectory[] directories;
 
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		byte[] header = new byte[4];
-		stream.read(header);
-		stream.unread(header);
-		if (header[0] != header[1]) return false;
-		if (!(header[0] == 0x49 && header[2] == 42 && header[3] == 0) &&
-			!(header[0] == 0x4d && header[2] == 0 && header[3] == 42)) {
-			return false;
-		} 	
-		return true;
-	} catch (Exception e) {
+boolean isFileFormat(byte[] header) {
+	if (header[0] != header[1]) return false;
+	if (!(header[0] == 0x49 && header[2] == 42 && header[3] == 0) &&
+		!(header[0] == 0x4d && header[2] == 0 && header[3] == 42)) {
 		return false;
-	}
+	} 	
+	return true;
 }
 
 @Override
 ImageData[] loadFromByteStream() {	
-	byte[] header = new byte[8];
-	boolean isLittleEndian;
-	ImageData[] images = new ImageData[0];
-	TIFFRandomFileAccess file = new TIFFRandomFileAccess(inputStream);
 	try {
-		file.read(header);
-		if (header[0] != header[1]) SWT.error(SWT.ERROR_INVALID_IMAGE);
-		if (!(header[0] == 0x49 && header[2] == 42 && header[3] == 0) &&
-			!(header[0] == 0x4d && header[2] == 0 && header[3] == 42)) {
-			SWT.error(SWT.ERROR_INVALID_IMAGE);
-		} 
-		isLittleEndian = header[0] == 0x49;	
-		int offset = isLittleEndian ? 
-			(header[4] & 0xFF) | ((header[5] & 0xFF) << 8) | ((header[6] & 0xFF) << 16) | ((header[7] & 0xFF) << 24) :
-			(header[7] & 0xFF) | ((header[6] & 0xFF) << 8) | ((header[5] & 0xFF) << 16) | ((header[4] & 0xFF) << 24);
-		while (offset != 0) {
-			file.seek(offset);
-			TIFFDirectory directory = new TIFFDirectory(file, isLittleEndian, loader);
-			int [] nextIFDOffset = new int[1];
-			ImageData image = directory.read(nextIFDOffset);
-			offset = nextIFDOffset[0];
-			ImageData[] oldImages = images;
-			images = new ImageData[oldImages.length + 1];
-			System.arraycopy(oldImages, 0, images, 0, oldImages.length);
-			images[images.length - 1] = image;
+		readDirectories();
+		ImageData[] pages = new ImageData[directories.length];
+		for (int i = 0; i < directories.length; i++) {
+			pages[i] = directories[i].createImage();
+			directories[i].decodePixels(pages[i]);
 		}
+		return pages;
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_IO, e);
 	}
-	return images;
+	return null;
+}
+
+@Override
+void openByteStream() throws IOException {
+	readDirectories();
+	imageIndex = 0;
+}
+
+@Override
+ImageData loadNextFromByteStream() throws IOException {
+	if (imageIndex >= directories.length) return null;
+	ImageData image = directories[imageIndex].createImage();
+	directories[imageIndex].decodePixels(image);
+	imageIndex++;
+	return image;
+}
+
+/**
+ * Skip pages without decoding their strips, as the directories
+ * give the offset of each page.
+ */
+@Override
+void skipFromByteStream(int count) throws IOException {
+	imageIndex = Math.min(imageIndex + count, directories.length);
+}
+
+/**
+ * Read the image file directories, and describe the first page.
+ */
+@Override
+ImageInfo probeByteStream() throws IOException {
+	readDirectories();
+	if (directories.length == 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	TIFFDirectory directory = directories[0];
+	return new ImageInfo(SWT.IMAGE_TIFF, directory.imageWidth, directory.imageLength, directory.depth, directories.length);
+}
+
+/**
+ * Read the header and all the image file directories, without
+ * reading the strips of the pages.
+ */
+void readDirectories() throws IOException {
+	byte[] header = new byte[8];
+	boolean isLittleEndian;
+	TIFFRandomFileAccess file = new TIFFRandomFileAccess(inputStream);
+	directories = new TIFFDirectory[0];
+	file.read(header);
+	if (header[0] != header[1]) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	if (!(header[0] == 0x49 && header[2] == 42 && header[3] == 0) &&
+		!(header[0] == 0x4d && header[2] == 0 && header[3] == 42)) {
+		SWT.error(SWT.ERROR_INVALID_IMAGE);
+	} 
+	isLittleEndian = header[0] == 0x49;	
+	int offset = isLittleEndian ? 
+		(header[4] & 0xFF) | ((header[5] & 0xFF) << 8) | ((header[6] & 0xFF) << 16) | ((header[7] & 0xFF) << 24) :
+		(header[7] & 0xFF) | ((header[6] & 0xFF) << 8) | ((header[5] & 0xFF) << 16) | ((header[4] & 0xFF) << 24);
+	while (offset != 0) {
+		file.seek(offset);
+		TIFFDirectory directory = new TIFFDirectory(file, isLittleEndian, loader);
+		int [] nextIFDOffset = new int[1];
+		directory.readDirectory(nextIFDOffset);
+		offset = nextIFDOffset[0];
+		TIFFDirectory[] oldDirectories = directories;
+		directories = new TIFFDirectory[oldDirectories.length + 1];
+		System.arraycopy(oldDirectories, 0, directories, 0, oldDirectories.length);
+		directories[directories.length - 1] = directory;
+	}
 }
 
 @Override
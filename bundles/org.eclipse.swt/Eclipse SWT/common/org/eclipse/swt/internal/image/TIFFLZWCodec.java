@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+import org.eclipse.swt.*;
+
+/*
+* Decoder for
+* - LZW compression (TIFF compression type 5)
+*
+* Codes are packed most significant bit first and grow from 9 to
+* 12 bits one code earlier than in GIF, as required by TIFF 6.0.
+* The string table is kept in flat arrays: each entry refers to
+* the entry for its prefix and knows its last byte, its first byte
+* and its length, so that strings are written backwards without
+* any intermediate buffer.
+*/
+final class TIFFLZWCodec {
+	static final int CLEAR_CODE = 256;
+	static final int END_OF_INFORMATION = 257;
+	static final int FIRST_CODE = 258;
+	static final int MIN_BITS = 9;
+	static final int MAX_BITS = 12;
+	static final int TABLE_SIZE = 1 << MAX_BITS;
+
+	int[] prefix = new int[TABLE_SIZE];
+	byte[] suffix = new byte[TABLE_SIZE];
+	byte[] first = new byte[TABLE_SIZE];
+	int[] length = new int[TABLE_SIZE];
+
+	byte[] src;
+	int byteOffsetSrc;
+	int bitBuffer;
+	int bitCount;
+
+TIFFLZWCodec() {
+	for (int i = 0; i < CLEAR_CODE; i++) {
+		prefix[i] = -1;
+		suffix[i] = first[i] = (byte)i;
+		length[i] = 1;
+	}
+}
+
+/**
+ * Decodes the LZW compressed <code>src</code> into <code>dest</code>,
+ * starting at <code>offsetDest</code> and writing at most
+ * <code>maxLength</code> bytes.
+ *
+ * @return the number of bytes decoded
+ */
+public int decode(byte[] src, byte[] dest, int offsetDest, int maxLength) {
+	this.src = src;
+	byteOffsetSrc = 0;
+	bitBuffer = bitCount = 0;
+	int destIndex = offsetDest;
+	int destEnd = offsetDest + maxLength;
+	int nextCode = FIRST_CODE;
+	int codeSize = MIN_BITS;
+	int oldCode = -1;
+	while (destIndex < destEnd) {
+		int code = getNextCode(codeSize);
+		if (code == -1 || code == END_OF_INFORMATION) break;
+		if (code == CLEAR_CODE) {
+			nextCode = FIRST_CODE;
+			codeSize = MIN_BITS;
+			oldCode = -1;
+			continue;
+		}
+		if (oldCode == -1) {
+			if (code > CLEAR_CODE) SWT.error(SWT.ERROR_INVALID_IMAGE);
+			dest[destIndex++] = (byte)code;
+			oldCode = code;
+			continue;
+		}
+		if (code > nextCode) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		if (nextCode < TABLE_SIZE) {
+			/* The new entry is the previous string plus the first byte of the current one */
+			prefix[nextCode] = oldCode;
+			first[nextCode] = first[oldCode];
+			suffix[nextCode] = code == nextCode ? first[oldCode] : first[code];
+			length[nextCode] = length[oldCode] + 1;
+			nextCode++;
+			if (nextCode == (1 << codeSize) - 1 && codeSize < MAX_BITS) codeSize++;
+		}
+		destIndex += writeString(code, dest, destIndex, destEnd);
+		oldCode = code;
+	}
+	return destIndex - offsetDest;
+}
+
+int getNextCode(int codeSize) {
+	while (bitCount < codeSize) {
+		if (byteOffsetSrc >= src.length) return -1;
+		bitBuffer = (bitBuffer << 8) | (src[byteOffsetSrc++] & 0xFF);
+		bitCount += 8;
+	}
+	bitCount -= codeSize;
+	return (bitBuffer >>> bitCount) & ((1 << codeSize) - 1);
+}
+
+int writeString(int code, byte[] dest, int destIndex, int destEnd) {
+	int n = length[code];
+	int index = destIndex + n - 1;
+	/* Skip the bytes that do not fit in the destination */
+	while (index >= destEnd) {
+		code = prefix[code];
+		index--;
+	}
+	while (index >= destIndex) {
+		dest[index--] = suffix[code];
+		code = prefix[code];
+	}
+	return Math.min(n, destEnd - destIndex);
+}
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -51,15 +51,8 @@ int iconSize(ImageData i) {
 	return WinBMPFileFormat.BMPHeaderFixedSize + paletteSize + dataSize;
 }
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		byte[] header = new byte[4];
-		stream.read(header);
-		stream.unread(header);
-		return header[0] == 0 && header[1] == 0 && header[2] == 1 && header[3] == 0;
-	} catch (Exception e) {
-		return false;
-	}
+boolean isFileFormat(byte[] header) {
+	return header[0] == 0 && header[1] == 0 && header[2] == 1 && header[3] == 0;
 }
 boolean isValidIcon(ImageData i) {
 	switch (i.depth) {
@@ -122,13 +115,35 @@ ImageData[] loadFromByteStream() {
 	}
 	return icons;
 }
+/**
+ * Read the icon directory and the header of the first icon.
+ */
+@Override
+ImageInfo probeByteStream() throws IOException {
+	int numIcons = loadFileHeader(inputStream);
+	int[][] headers = loadIconHeaders(numIcons);
+	if (inputStream.getPosition() < headers[0][6]) {
+		inputStream.skip(headers[0][6] - inputStream.getPosition());
+	}
+	PNGFileFormat png = new PNGFileFormat();
+	if (png.isFileFormat(inputStream)) {
+		png.inputStream = inputStream;
+		ImageInfo info = png.probeByteStream();
+		return new ImageInfo(SWT.IMAGE_ICO, info.width, info.height, info.depth, numIcons);
+	}
+	byte[] infoHeader = loadInfoHeader(headers[0]);
+	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8) | ((infoHeader[6] & 0xFF) << 16) | ((infoHeader[7] & 0xFF) << 24);
+	int height = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
+	int depth = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
+	return new ImageInfo(SWT.IMAGE_ICO, width, height, depth, numIcons);
+}
 /**
  * Load one icon from the byte stream.
  */
 ImageData loadIcon(int[] iconHeader) {
 	try {
-		FileFormat png = getFileFormat(inputStream, "PNG");
-		if (png != null) {
+		FileFormat png = new PNGFileFormat();
+		if (png.isFileFormat(inputStream)) {
 			png.loader = this.loader;
 			return png.loadFromStream(inputStream)[0];
 		}
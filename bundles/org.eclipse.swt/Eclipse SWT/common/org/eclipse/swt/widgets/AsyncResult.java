@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.widgets;
+
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.internal.Compatibility;
+
+/**
+ * Instances of this class compute a value on the user-interface
+ * thread and hand it to the threads that wait for it.
+ * <p>
+ * Subclasses implement <code>call()</code>, and the instance is then
+ * given to <code>Display.asyncExec()</code>. Unlike
+ * <code>syncExec()</code>, the caller is not suspended while the
+ * value is computed: a background thread can queue several
+ * instances, and only waits when it calls <code>get()</code>. An
+ * exception thrown by <code>call()</code> is reported to the threads
+ * calling <code>get()</code>, instead of to the user-interface thread.
+ * An instance that has not started to run can be cancelled, and it is
+ * cancelled when its display is disposed before it runs.
+ * </p><p>
+ * For example:
+ * </p>
+ * <pre><code>
+ * AsyncResult text = new AsyncResult () {
+ *     protected Object call () {
+ *         return label.getText ();
+ *     }
+ * };
+ * display.asyncExec (text);
+ * ...
+ * String string = (String) text.get ();
+ * </code></pre>
+ * <p>
+ * Each instance is run at most once. Except for <code>call()</code>,
+ * the methods of this class may be called from any thread.
+ * </p>
+ *
+ * @see Display#asyncExec(Runnable)
+ *
+ * @since 3.104
+ */
+public abstract class AsyncResult implements Runnable {
+	int state;
+	Object value;
+	Throwable throwable;
+	long queued, started;
+	Thread thread;
+	static final int WAITING = 0, RUNNING = 1, DONE = 2, CANCELLED = 3;
+
+/**
+ * Constructs a new instance of this class.
+ */
+public AsyncResult () {
+	queued = System.currentTimeMillis ();
+}
+
+/**
+ * Computes the value of the receiver. This method is
+ * invoked by the user-interface thread.
+ *
+ * @return the value of the receiver
+ *
+ * @exception Exception if the value cannot be computed
+ */
+protected abstract Object call () throws Exception;
+
+/**
+ * Cancels the receiver if it has not started to run. A
+ * cancelled instance is not run, and its value is <code>null</code>.
+ *
+ * @return <code>true</code> if the receiver was cancelled, and
+ * <code>false</code> if it had already run or been cancelled
+ */
+public synchronized boolean cancel () {
+	if (state != WAITING) return false;
+	state = CANCELLED;
+	notifyAll ();
+	return true;
+}
+
+/**
+ * Returns the value of the receiver, waiting until it has
+ * been computed or cancelled. The value of a cancelled
+ * instance is <code>null</code>.
+ *
+ * @return the value of the receiver
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_FAILED_EXEC - if an exception occurred when computing the value</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if called from a user-interface thread before the receiver has been given to a display</li>
+ * </ul>
+ */
+public Object get () {
+	return get (0);
+}
+
+/**
+ * Returns the value of the receiver, waiting at most the given
+ * number of milliseconds for it to be computed or cancelled. If
+ * the time is 0, this method waits until the value is known. The
+ * result is <code>null</code> when the value is still unknown after
+ * that time, which can be told apart from a <code>null</code> value
+ * with <code>isDone()</code>. When this method is called by the
+ * user-interface thread, the receiver is run first if it has not
+ * started to run yet. A user-interface thread cannot wait for an
+ * instance which has not been given to a display yet, as it would
+ * never be run.
+ *
+ * @param timeout the maximum time to wait, in milliseconds, or 0
+ * @return the value of the receiver, or <code>null</code>
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the timeout is negative</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_FAILED_EXEC - if an exception occurred when computing the value</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if called from a user-interface thread before the receiver has been given to a display</li>
+ * </ul>
+ */
+public Object get (long timeout) {
+	if (timeout < 0) SWT.error (SWT.ERROR_INVALID_ARGUMENT);
+	/*
+	* The user-interface thread cannot wait for itself, so it
+	* runs the receiver right away, as syncExec() does.
+	*/
+	Thread thread;
+	boolean queued;
+	synchronized (this) {
+		thread = this.thread;
+		queued = thread != null || state != WAITING;
+	}
+	Thread current = Thread.currentThread ();
+	if (thread == current) run ();
+	if (!queued && Display.findDisplay (current) != null) SWT.error (SWT.ERROR_THREAD_INVALID_ACCESS);
+	return waitFor (timeout);
+}
+
+synchronized Object waitFor (long timeout) {
+	boolean interrupted = false;
+	long end = System.currentTimeMillis () + timeout;
+	while (state < DONE) {
+		long delay = 0;
+		if (timeout != 0) {
+			delay = end - System.currentTimeMillis ();
+			if (delay <= 0) break;
+		}
+		try {
+			wait (delay);
+		} catch (InterruptedException e) {
+			interrupted = true;
+		}
+	}
+	if (interrupted) {
+		Compatibility.interrupt();
+	}
+	if (throwable != null) {
+		SWT.error (SWT.ERROR_FAILED_EXEC, throwable);
+	}
+	return value;
+}
+
+/**
+ * Returns the number of milliseconds that the receiver waited
+ * to be run, or -1 if it has not started to run.
+ *
+ * @return the time spent waiting, in milliseconds
+ */
+public synchronized long getQueueTime () {
+	if (started == 0) return -1;
+	return started - queued;
+}
+
+/**
+ * Returns <code>true</code> if the receiver has been cancelled,
+ * and <code>false</code> otherwise.
+ *
+ * @return the cancelled state of the receiver
+ */
+public synchronized boolean isCancelled () {
+	return state == CANCELLED;
+}
+
+/**
+ * Returns <code>true</code> if the value of the receiver is
+ * known, either because it has been computed or because the
+ * receiver has been cancelled, and <code>false</code> otherwise.
+ *
+ * @return the completed state of the receiver
+ */
+public synchronized boolean isDone () {
+	return state >= DONE;
+}
+
+/**
+ * Computes the value of the receiver and wakes the threads
+ * waiting for it, unless the receiver has already run or
+ * been cancelled. This method is invoked by the display.
+ */
+public void run () {
+	synchronized (this) {
+		if (state != WAITING) return;
+		state = RUNNING;
+		started = System.currentTimeMillis ();
+	}
+	Object result = null;
+	Throwable error = null;
+	try {
+		result = call ();
+	} catch (Throwable t) {
+		error = t;
+	}
+	synchronized (this) {
+		value = result;
+		throwable = error;
+		state = DONE;
+		notifyAll ();
+	}
+}
+
+synchronized void setQueued (long time, Thread thread) {
+	if (state != WAITING) return;
+	queued = time;
+	this.thread = thread;
+}
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,130 +22,209 @@ import org.eclipse.swt.internal.SWTEventListener;
  */
 
 class EventTable {
+	/*
+	* The listeners are kept in one bucket per event type, in the
+	* order in which they were hooked. Each listener also has a serial
+	* number, which orders listeners of different types. The buckets
+	* of the event types below 64 are also flagged in hookMask, so
+	* that hooks() does not need to look for them.
+	*/
 	int [] types;
-	Listener [] listeners;
+	Listener [][] listeners;
+	int [][] serials;
+	int [] counts;
+	int typeCount, serial;
+	long hookMask;
 	int level;
 	static final int GROW_SIZE = 4;
-	
+	static final int MASK_SIZE = 64;
+
 public Listener [] getListeners (int eventType) {
-	if (types == null) return new Listener [0];
+	int index = indexOf (eventType);
+	if (index == -1) return new Listener [0];
+	Listener [] bucket = listeners [index];
 	int count = 0;
-	for (int i=0; i<types.length; i++) {
-		if (types [i] == eventType) count++;
+	for (int i=0; i<counts [index]; i++) {
+		if (bucket [i] != null) count++;
 	}
-	if (count == 0) return new Listener [0];
 	Listener [] result = new Listener [count];
 	count = 0;
-	for (int i=0; i<types.length; i++) {
-		if (types [i] == eventType) {
-			result [count++] = listeners [i];
-		}
+	for (int i=0; i<counts [index]; i++) {
+		if (bucket [i] != null) result [count++] = bucket [i];
 	}
 	return result;
 }
 
 public void hook (int eventType, Listener listener) {
-	if (types == null) types = new int [GROW_SIZE];
-	if (listeners == null) listeners = new Listener [GROW_SIZE];
-	int length = types.length, index = length - 1;
-	while (index >= 0) {
-		if (types [index] != 0) break;
-		--index;
+	if (eventType == SWT.None) return;
+	int index = indexOf (eventType);
+	if (index == -1) {
+		if (types == null) {
+			types = new int [GROW_SIZE];
+			listeners = new Listener [GROW_SIZE][];
+			serials = new int [GROW_SIZE][];
+			counts = new int [GROW_SIZE];
+		}
+		index = typeCount;
+		if (index == types.length) {
+			int length = types.length;
+			int [] newTypes = new int [length + GROW_SIZE];
+			System.arraycopy (types, 0, newTypes, 0, length);
+			types = newTypes;
+			Listener [][] newListeners = new Listener [length + GROW_SIZE][];
+			System.arraycopy (listeners, 0, newListeners, 0, length);
+			listeners = newListeners;
+			int [][] newSerials = new int [length + GROW_SIZE][];
+			System.arraycopy (serials, 0, newSerials, 0, length);
+			serials = newSerials;
+			int [] newCounts = new int [length + GROW_SIZE];
+			System.arraycopy (counts, 0, newCounts, 0, length);
+			counts = newCounts;
+		}
+		types [index] = eventType;
+		listeners [index] = new Listener [1];
+		serials [index] = new int [1];
+		typeCount++;
 	}
-	index++;
-	if (index == length) {
-		int [] newTypes = new int [length + GROW_SIZE];
-		System.arraycopy (types, 0, newTypes, 0, length);
-		types = newTypes;
-		Listener [] newListeners = new Listener [length + GROW_SIZE];
-		System.arraycopy (listeners, 0, newListeners, 0, length);
-		listeners = newListeners;
+	int count = counts [index];
+	if (count == listeners [index].length) {
+		Listener [] newBucket = new Listener [count + GROW_SIZE];
+		System.arraycopy (listeners [index], 0, newBucket, 0, count);
+		listeners [index] = newBucket;
+		int [] newSerials = new int [count + GROW_SIZE];
+		System.arraycopy (serials [index], 0, newSerials, 0, count);
+		serials [index] = newSerials;
 	}
-	types [index] = eventType;
-	listeners [index] = listener;
+	listeners [index][count] = listener;
+	serials [index][count] = serial++;
+	counts [index] = count + 1;
+	if (0 <= eventType && eventType < MASK_SIZE) hookMask |= 1L << eventType;
 }
 
 public boolean hooks (int eventType) {
-	if (types == null) return false;
-	for (int i=0; i<types.length; i++) {
-		if (types [i] == eventType) return true;
+	if (0 <= eventType && eventType < MASK_SIZE) {
+		return (hookMask & (1L << eventType)) != 0;
+	}
+	int index = indexOf (eventType);
+	return index != -1 && isHooked (index);
+}
+
+int indexOf (int eventType) {
+	for (int i=0; i<typeCount; i++) {
+		if (types [i] == eventType) return i;
+	}
+	return -1;
+}
+
+boolean isHooked (int index) {
+	Listener [] bucket = listeners [index];
+	for (int i=0; i<counts [index]; i++) {
+		if (bucket [i] != null) return true;
 	}
 	return false;
 }
 
 public void sendEvent (Event event) {
-	if (types == null) return;
+	if (!hooks (event.type)) return;
+	int type = event.type, index = indexOf (type);
 	level += level >= 0 ? 1 : -1;
 	try {
-		for (int i=0; i<types.length; i++) {
+		int i = 0;
+		while (true) {
 			if (event.type == SWT.None) return;
-			if (types [i] == event.type) {
-				Listener listener = listeners [i];
-				if (listener != null) listener.handleEvent (event);
+			if (event.type != type) {
+				/*
+				* A listener changed the type of the event. Carry on with
+				* the listeners of the new type that were hooked after it,
+				* as they would follow it if all the listeners were kept
+				* in the order in which they were hooked.
+				*/
+				int previous = serials [index][i - 1];
+				type = event.type;
+				index = indexOf (type);
+				if (index == -1) return;
+				i = 0;
+				while (i < counts [index] && serials [index][i] < previous) i++;
 			}
+			if (i >= counts [index]) return;
+			Listener listener = listeners [index][i++];
+			if (listener != null) listener.handleEvent (event);
 		}
 	} finally {
 		boolean compact = level < 0;
 		level -= level >= 0 ? 1 : -1;
 		if (compact && level == 0) {
-			int index = 0;
-			for (int i=0; i<types.length; i++) {
-				if (types [i] != 0) {
-					types [index] = types [i];
-					listeners [index] = listeners [i];
-					index++;
+			for (int j=0; j<typeCount; j++) {
+				Listener [] bucket = listeners [j];
+				int [] bucketSerials = serials [j];
+				int count = 0;
+				for (int i=0; i<counts [j]; i++) {
+					if (bucket [i] != null) {
+						bucket [count] = bucket [i];
+						bucketSerials [count] = bucketSerials [i];
+						count++;
+					}
 				}
-			}
-			for (int i=index; i<types.length; i++) {
-				types [i] = 0;
-				listeners [i] = null;
+				for (int i=count; i<counts [j]; i++) {
+					bucket [i] = null;
+				}
+				counts [j] = count;
 			}
 		}
 	}
 }
 
 public int size () {
-	if (types == null) return 0;
 	int count = 0;
-	for (int i=0; i<types.length; i++) {
-		if (types [i] != 0) count++;
+	for (int j=0; j<typeCount; j++) {
+		Listener [] bucket = listeners [j];
+		for (int i=0; i<counts [j]; i++) {
+			if (bucket [i] != null) count++;
+		}
 	}
 	return count;
 }
 
-void remove (int index) {
+void remove (int index, int i) {
+	Listener [] bucket = listeners [index];
 	if (level == 0) {
-		int end = types.length - 1;
-		System.arraycopy (types, index + 1, types, index, end - index);
-		System.arraycopy (listeners, index + 1, listeners, index, end - index);
-		index = end;
+		int end = counts [index] - 1;
+		System.arraycopy (bucket, i + 1, bucket, i, end - i);
+		System.arraycopy (serials [index], i + 1, serials [index], i, end - i);
+		bucket [end] = null;
+		counts [index] = end;
 	} else {
 		if (level > 0) level = -level;
+		bucket [i] = null;
+	}
+	int eventType = types [index];
+	if (0 <= eventType && eventType < MASK_SIZE && !isHooked (index)) {
+		hookMask &= ~(1L << eventType);
 	}
-	types [index] = 0;
-	listeners [index] = null;
 }
 
 public void unhook (int eventType, Listener listener) {
-	if (types == null) return;
-	for (int i=0; i<types.length; i++) {
-		if (types [i] == eventType && listeners [i] == listener) {
-			remove (i);
+	int index = indexOf (eventType);
+	if (index == -1) return;
+	Listener [] bucket = listeners [index];
+	for (int i=0; i<counts [index]; i++) {
+		if (bucket [i] == listener) {
+			remove (index, i);
 			return;
 		}
 	}
 }
 
 public void unhook (int eventType, SWTEventListener listener) {
-	if (types == null) return;
-	for (int i=0; i<types.length; i++) {
-		if (types [i] == eventType) {
-			if (listeners [i] instanceof TypedListener) {
-				TypedListener typedListener = (TypedListener) listeners [i];
-				if (typedListener.getEventListener () == listener) {
-					remove (i);
-					return;
-				}
+	int index = indexOf (eventType);
+	if (index == -1) return;
+	Listener [] bucket = listeners [index];
+	for (int i=0; i<counts [index]; i++) {
+		if (bucket [i] instanceof TypedListener) {
+			TypedListener typedListener = (TypedListener) bucket [i];
+			if (typedListener.getEventListener () == listener) {
+				remove (index, i);
+				return;
 			}
 		}
 	}
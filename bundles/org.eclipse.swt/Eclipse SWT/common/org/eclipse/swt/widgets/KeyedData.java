@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.widgets;
+
+
+/**
+ * This class implements the storage of the keyed data of
+ * widgets, which is kept in an <code>Object []</code> whose
+ * first element is the data of the widget.
+ * <p>
+ * A few keys are kept in a compact table of odd length, with
+ * the keys and values following each other, which is searched
+ * linearly. When there are more than <code>LIMIT</code> keys,
+ * they are kept in a hash table of even length instead, which
+ * uses open addressing with linear probing and whose last
+ * element holds the number of keys.
+ * </p>
+ */
+class KeyedData {
+	static final int LIMIT = 8;
+	static final int MIN_CAPACITY = 16;
+
+static Object get (Object [] table, String key) {
+	if ((table.length & 1) != 0) {
+		for (int i=1; i<table.length; i+=2) {
+			if (key.equals (table [i])) return table [i+1];
+		}
+		return null;
+	}
+	int mask = (table.length - 2) / 2 - 1;
+	int index = key.hashCode () & mask;
+	Object next;
+	while ((next = table [1 + index * 2]) != null) {
+		if (key.equals (next)) return table [2 + index * 2];
+		index = (index + 1) & mask;
+	}
+	return null;
+}
+
+/*
+* Sets the value of the key, removing the key when the value is
+* null, and answers the resulting table. The answered table has
+* a length of 1 when there are no more keys.
+*/
+static Object [] put (Object [] table, String key, Object value) {
+	if ((table.length & 1) == 0) return putHashed (table, key, value);
+	int index = 1;
+	while (index < table.length) {
+		if (key.equals (table [index])) break;
+		index += 2;
+	}
+	if (value != null) {
+		if (index == table.length) {
+			int count = table.length / 2;
+			if (count == LIMIT) {
+				Object [] newTable = newHashTable (table [0], count + 1);
+				for (int i=1; i<table.length; i+=2) {
+					newTable = putHashed (newTable, (String) table [i], table [i+1]);
+				}
+				return putHashed (newTable, key, value);
+			}
+			Object [] newTable = new Object [table.length + 2];
+			System.arraycopy (table, 0, newTable, 0, table.length);
+			table = newTable;
+		}
+		table [index] = key;
+		table [index + 1] = value;
+	} else {
+		if (index != table.length) {
+			int length = table.length - 2;
+			Object [] newTable = new Object [length];
+			System.arraycopy (table, 0, newTable, 0, index);
+			System.arraycopy (table, index + 2, newTable, index, length - index);
+			table = newTable;
+		}
+	}
+	return table;
+}
+
+static Object [] newHashTable (Object data, int count) {
+	int capacity = MIN_CAPACITY;
+	while (count * 4 > capacity * 3) capacity *= 2;
+	Object [] table = new Object [2 + capacity * 2];
+	table [0] = data;
+	table [table.length - 1] = new int [1];
+	return table;
+}
+
+static Object [] putHashed (Object [] table, String key, Object value) {
+	int [] count = (int []) table [table.length - 1];
+	int mask = (table.length - 2) / 2 - 1;
+	int index = key.hashCode () & mask;
+	Object next;
+	while ((next = table [1 + index * 2]) != null) {
+		if (key.equals (next)) break;
+		index = (index + 1) & mask;
+	}
+	if (value != null) {
+		if (next != null) {
+			table [2 + index * 2] = value;
+			return table;
+		}
+		if ((count [0] + 1) * 4 > (mask + 1) * 3) {
+			Object [] newTable = newHashTable (table [0], count [0] + 1);
+			for (int i=0; i<=mask; i++) {
+				if (table [1 + i * 2] != null) {
+					newTable = putHashed (newTable, (String) table [1 + i * 2], table [2 + i * 2]);
+				}
+			}
+			return putHashed (newTable, key, value);
+		}
+		table [1 + index * 2] = key;
+		table [2 + index * 2] = value;
+		count [0]++;
+		return table;
+	}
+	if (next == null) return table;
+	count [0]--;
+	if (count [0] < LIMIT / 2) {
+		Object [] newTable = new Object [1 + count [0] * 2];
+		newTable [0] = table [0];
+		int j = 1;
+		for (int i=0; i<=mask; i++) {
+			if (i != index && table [1 + i * 2] != null) {
+				newTable [j++] = table [1 + i * 2];
+				newTable [j++] = table [2 + i * 2];
+			}
+		}
+		return newTable;
+	}
+	/*
+	* Move the following keys back into the emptied slot when it is
+	* on their probe path, so that no key is separated from its hash
+	* slot by an empty one.
+	*/
+	int empty = index;
+	while (true) {
+		index = (index + 1) & mask;
+		if ((next = table [1 + index * 2]) == null) break;
+		int home = next.hashCode () & mask;
+		boolean between = empty <= index ? empty < home && home <= index : empty < home || home <= index;
+		if (between) continue;
+		table [1 + empty * 2] = next;
+		table [2 + empty * 2] = table [2 + index * 2];
+		empty = index;
+	}
+	table [1 + empty * 2] = null;
+	table [2 + empty * 2] = null;
+	return table;
+}
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2014 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
 package org.eclipse.swt.widgets;
 
 
+import java.util.Hashtable;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import org.eclipse.swt.internal.Compatibility;
@@ -33,14 +35,17 @@ import org.eclipse.swt.internal.Compatibility;
  * @see Display#setSynchronizer
  * @see <a href="http://www.eclipse.org/swt/">Sample code and further information</a>
  */
+@SuppressWarnings({"rawtypes", "unchecked"})
 public class Synchronizer {
 	Display display;
 	int messageCount;
-	RunnableLock [] messages;
+	RunnableLock first, last;
+	Hashtable keys;
 	Object messageLock = new Object ();
 	Thread syncThread;
-	static final int GROW_SIZE = 4;
-	static final int MESSAGE_LIMIT = 64;
+	int countLimit = 1, timeLimit;
+	int lastCount, lastLatency;
+	long runCount, mergeCount;
 
 	//TEMPORARY CODE
 	static final boolean IS_CARBON = "carbon".equals (SWT.getPlatform ());
@@ -58,15 +63,37 @@ public Synchronizer (Display display) {
 
 void addLast (RunnableLock lock) {
 	boolean wake = false;
+	lock.time = System.currentTimeMillis ();
+	if (lock.runnable instanceof AsyncResult) {
+		((AsyncResult) lock.runnable).setQueued (lock.time, display.thread);
+	}
 	synchronized (messageLock) {
-		if (messages == null) messages = new RunnableLock [GROW_SIZE];
-		if (messageCount == messages.length) {
-			RunnableLock[] newMessages = new RunnableLock [messageCount + GROW_SIZE];
-			System.arraycopy (messages, 0, newMessages, 0, messageCount);
-			messages = newMessages;
+		if (lock.key != null) {
+			if (keys == null) keys = new Hashtable ();
+			RunnableLock queued = (RunnableLock) keys.get (lock.key);
+			if (queued != null) {
+				if (queued.runnable instanceof AsyncResult) {
+					((AsyncResult) queued.runnable).cancel ();
+				}
+				queued.runnable = lock.runnable;
+				mergeCount++;
+				return;
+			}
+			keys.put (lock.key, lock);
 		}
-		messages [messageCount++] = lock;
-		wake = messageCount == 1;
+		/*
+		* The messages are kept in a linked queue so that adding and
+		* removing one does not depend on the number of pending messages.
+		* The user-interface thread only needs to be woken when the queue
+		* was empty, as it runs the queued messages before sleeping again.
+		*/
+		if (last == null) {
+			first = last = lock;
+		} else {
+			last.next = lock;
+			last = lock;
+		}
+		wake = ++messageCount == 1;
 	}
 	if (wake) display.wakeThread ();
 }
@@ -93,28 +120,156 @@ protected void asyncExec (Runnable runnable) {
 	addLast (new RunnableLock (runnable));
 }
 
-int getMessageCount () {
+/**
+ * Causes the <code>run()</code> method of the runnable to
+ * be invoked by the user-interface thread at the next
+ * reasonable opportunity, unless a runnable with the same
+ * key is already waiting to be invoked, in which case the
+ * given runnable replaces it. The caller of this method
+ * continues to run in parallel, and is not notified when
+ * the runnable has completed.
+ *
+ * @param key the key identifying the request, or <code>null</code>
+ * @param runnable code to run on the user-interface thread.
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the runnable is null</li>
+ * </ul>
+ *
+ * @see Display#asyncExec(Object, Runnable)
+ * @see #getMergeCount
+ *
+ * @since 3.104
+ */
+protected void asyncExec (Object key, Runnable runnable) {
+	if (runnable == null) SWT.error (SWT.ERROR_NULL_ARGUMENT);
+	if (key == null) {
+		asyncExec (runnable);
+		return;
+	}
+	RunnableLock lock = new RunnableLock (runnable);
+	lock.key = key;
+	addLast (lock);
+}
+
+/**
+ * Returns the maximum number of messages that are run each time
+ * the user-interface thread runs the pending messages between
+ * other events.
+ *
+ * @return the maximum number of messages run at a time
+ *
+ * @see #setDrainLimits
+ *
+ * @since 3.104
+ */
+public int getDrainCountLimit () {
+	return countLimit;
+}
+
+/**
+ * Returns the number of milliseconds after which the user-interface
+ * thread stops running pending messages and returns to the other
+ * events, or 0 if only the number of messages is limited.
+ *
+ * @return the time limit, in milliseconds
+ *
+ * @see #setDrainLimits
+ *
+ * @since 3.104
+ */
+public int getDrainTimeLimit () {
+	return timeLimit;
+}
+
+/**
+ * Returns the number of messages that were run the last time the
+ * user-interface thread ran the pending messages.
+ *
+ * @return the number of messages last run at a time
+ *
+ * @since 3.104
+ */
+public int getLastDrainCount () {
+	return lastCount;
+}
+
+/**
+ * Returns the number of milliseconds that the first message run
+ * the last time the user-interface thread ran the pending messages
+ * had waited since it was queued.
+ *
+ * @return the latency of the last messages run, in milliseconds
+ *
+ * @since 3.104
+ */
+public int getLastDrainLatency () {
+	return lastLatency;
+}
+
+/**
+ * Returns the number of runnables that replaced a waiting
+ * runnable with the same key, instead of being queued.
+ *
+ * @return the number of merged runnables
+ *
+ * @see #asyncExec(Object, Runnable)
+ *
+ * @since 3.104
+ */
+public long getMergeCount () {
+	return mergeCount;
+}
+
+/**
+ * Returns the number of messages that are waiting to be run
+ * by the user-interface thread.
+ *
+ * @return the number of pending messages
+ *
+ * @since 3.104
+ */
+public int getMessageCount () {
 	synchronized (messageLock) {
 		return messageCount;
 	}
 }
 
+/**
+ * Returns the number of messages that have been run by the
+ * user-interface thread since the receiver was created.
+ *
+ * @return the number of messages run
+ *
+ * @since 3.104
+ */
+public long getRunCount () {
+	return runCount;
+}
+
 void releaseSynchronizer () {
+	/* Wake the threads waiting for results that will never be computed */
+	for (RunnableLock lock = first; lock != null; lock = lock.next) {
+		if (lock.runnable instanceof AsyncResult) {
+			((AsyncResult) lock.runnable).cancel ();
+		}
+	}
 	display = null;
-	messages = null;
+	first = last = null;
+	keys = null;
 	messageLock = null;
 	syncThread = null;
 }
 
 RunnableLock removeFirst () {
 	synchronized (messageLock) {
-		if (messageCount == 0) return null;
-		RunnableLock lock = messages [0];
-		System.arraycopy (messages, 1, messages, 0, --messageCount);
-		messages [messageCount] = null;
-		if (messageCount == 0) {
-			if (messages.length > MESSAGE_LIMIT) messages = null;
-		}
+		RunnableLock lock = first;
+		if (lock == null) return null;
+		first = lock.next;
+		if (first == null) last = null;
+		lock.next = null;
+		if (lock.key != null) keys.remove (lock.key);
+		messageCount--;
 		return lock;
 	}
 }
@@ -124,11 +279,17 @@ boolean runAsyncMessages () {
 }
 
 boolean runAsyncMessages (boolean all) {
-	boolean run = false;
+	int count = 0;
+	long start = 0;
 	do {
 		RunnableLock lock = removeFirst ();
-		if (lock == null) return run;
-		run = true;
+		if (lock == null) break;
+		if (count == 0) {
+			start = System.currentTimeMillis ();
+			lastLatency = (int) (start - lock.time);
+		}
+		lastCount = ++count;
+		runCount++;
 		synchronized (lock) {
 			syncThread = lock.thread;
 			display.sendPreEvent(null);
@@ -145,8 +306,37 @@ boolean runAsyncMessages (boolean all) {
 				lock.notifyAll ();
 			}
 		}
-	} while (all);
-	return run;
+		/* Stop when a message has disposed the display */
+		if (display == null) break;
+	} while (all || (count < countLimit && (timeLimit == 0 || System.currentTimeMillis () - start < timeLimit)));
+	return count > 0;
+}
+
+/**
+ * Sets the limits on the messages that the user-interface thread
+ * runs at a time, before returning to the other events. Pending
+ * messages are run until either the given number of messages has
+ * been run, or the given number of milliseconds has elapsed. By
+ * default, a single message is run at a time.
+ * <p>
+ * Running more messages at a time reduces the overhead of a burst of
+ * <code>asyncExec</code> calls, but delays the input and paint events
+ * that arrive meanwhile.
+ * </p>
+ *
+ * @param count the maximum number of messages run at a time
+ * @param time the maximum time spent running messages, in milliseconds, or 0 for no time limit
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the count is less than 1 or the time is negative</li>
+ * </ul>
+ *
+ * @since 3.104
+ */
+public void setDrainLimits (int count, int time) {
+	if (count < 1 || time < 0) SWT.error (SWT.ERROR_INVALID_ARGUMENT);
+	countLimit = count;
+	timeLimit = time;
 }
 
 /**
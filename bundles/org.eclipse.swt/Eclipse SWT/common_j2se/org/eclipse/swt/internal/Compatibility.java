@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.swt.internal;
 
  
 import java.io.*;
+import java.lang.ref.SoftReference;
 import java.text.MessageFormat;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
@@ -110,6 +111,17 @@ public static boolean fileExists(String parent, String child) {
 	return new File (parent, child).exists();
 }
 
+/**
+ * Answers the time at which the indicated file was last modified,
+ * or 0 if it does not exist or the time is not known.
+ * 
+ * @param filename the name of the file
+ * @return the modification time of the file, in milliseconds
+ */
+public static long lastModified(String filename) {
+	return new File (filename).lastModified();
+}
+
 /**
  * Answers the most positive (i.e. closest to positive infinity)
  * integer value which is less than the number obtained by dividing
@@ -346,6 +358,63 @@ public static String getMessage(String key, Object[] args) {
 	return answer;
 }
 
+/**
+ * Answers the number of processors available to the virtual machine.
+ * <p>
+ * Note that this is not available on CLDC.
+ * </p>
+ *
+ * @return the number of available processors
+ */
+public static int availableProcessors() {
+	return Runtime.getRuntime().availableProcessors();
+}
+
+/**
+ * Answers a reference to the given object which does not prevent
+ * the garbage collector from reclaiming it when memory is low.
+ * <p>
+ * Note that this is not available on CLDC, where the object
+ * itself is answered.
+ * </p>
+ *
+ * @param referent the object to refer to
+ * @return the reference
+ *
+ * @see #getReferent(Object)
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public static Object newSoftReference(Object referent) {
+	return new SoftReference(referent);
+}
+
+/**
+ * Answers the object referred to by a reference answered by
+ * <code>newSoftReference</code>, or null if it was reclaimed.
+ *
+ * @param reference the reference
+ * @return the object referred to
+ */
+@SuppressWarnings("rawtypes")
+public static Object getReferent(Object reference) {
+	return ((SoftReference)reference).get();
+}
+
+/**
+ * Answers the current time in milliseconds, for measuring elapsed
+ * time. The time does not go back when the clock of the system
+ * is changed.
+ * <p>
+ * Note that this is not available on CLDC, where the time of
+ * the system clock is answered.
+ * </p>
+ *
+ * @return the current time in milliseconds
+ */
+public static long currentTime() {
+	return System.nanoTime() / 1000000;
+}
+
 /**
  * Interrupt the current thread. 
  * <p>
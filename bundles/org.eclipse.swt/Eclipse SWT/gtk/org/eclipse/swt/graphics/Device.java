@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,9 @@
 package org.eclipse.swt.graphics;
 
 
+import java.util.Hashtable;
+import java.util.Locale;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.internal.*;
 import org.eclipse.swt.internal.gtk.*;
@@ -23,7 +26,7 @@ import org.eclipse.swt.internal.gtk.*;
  *
  * @see <a href="http://www.eclipse.org/swt/">Sample code and further information</a>
  */
-@SuppressWarnings({"rawtypes"})
+@SuppressWarnings({"rawtypes", "unchecked"})
 public abstract class Device implements Drawable {
 	/**
 	 * the handle to the X Display
@@ -85,6 +88,18 @@ public abstract class Device implements Drawable {
 	
 	long /*int*/ emptyTab;
 
+	/* Font descriptions shared by equal fonts */
+	FontTable fonts = new FontTable();
+
+	/* Fonts of the platform, enumerated once, and by lower case family name */
+	FontData[] fontList;
+	Hashtable fontFamilies;
+	Object fontListLock = new Object();
+
+	/* Text extents measured by the GCs of the device */
+	TextExtentCache textExtents = new TextExtentCache(TEXT_EXTENT_LIMIT);
+	static final int TEXT_EXTENT_LIMIT = 4096;
+
 	boolean useXRender;
 	static boolean CAIRO_LOADED;
 
@@ -214,6 +229,27 @@ protected void checkDevice () {
 	if (disposed) SWT.error(SWT.ERROR_DEVICE_DISPOSED);
 }
 
+/**
+ * Removes the fonts of the platform enumerated by the receiver and the
+ * text extents measured by its GCs, as when the font settings of the
+ * platform have changed.
+ * <p>
+ * <b>IMPORTANT:</b> This method is <em>not</em> part of the SWT
+ * public API. It is marked protected only so that it can be shared
+ * within the packages provided by SWT. It is not available on all
+ * platforms and should never be called from application code.
+ * </p>
+ *
+ * @noreference This method is not intended to be referenced by clients.
+ */
+protected void clearFontCaches () {
+	synchronized (fontListLock) {
+		fontList = null;
+		fontFamilies = null;
+	}
+	textExtents.clear();
+}
+
 /**
  * Creates the device in the operating system.  If the device
  * does not have a handle, this method may do nothing depending
@@ -428,6 +464,30 @@ public Point getDPI () {
 public FontData[] getFontList (String faceName, boolean scalable) {
 	checkDevice ();
 	if (!scalable) return new FontData[0];
+	/*
+	* The fonts of the platform are enumerated once, and the font
+	* data is copied, as the caller may change it.
+	*/
+	FontData[] fds;
+	synchronized (fontListLock) {
+		if (fontList == null) loadFontList();
+		if (faceName == null) {
+			fds = fontList;
+		} else {
+			fds = (FontData[]) fontFamilies.get(faceName.toLowerCase(Locale.ENGLISH));
+			if (fds == null) return new FontData[0];
+		}
+	}
+	FontData[] result = new FontData[fds.length];
+	for (int i=0; i<fds.length; i++) {
+		FontData data = fds[i];
+		result[i] = new FontData(data.getName(), data.getHeightF(), data.getStyle());
+		result[i].string = data.string;
+	}
+	return result;
+}
+
+void loadFontList () {
 	long /*int*/[] family = new long /*int*/[1];
 	long /*int*/[] face = new long /*int*/[1];
 	long /*int*/[] families = new long /*int*/[1];
@@ -437,43 +497,47 @@ public FontData[] getFontList (String faceName, boolean scalable) {
 	long /*int*/ context = OS.gdk_pango_context_get();
 	OS.pango_context_list_families(context, families, n_families);
 	int nFds = 0;
-	FontData[] fds = new FontData[faceName != null ? 4 : n_families[0]];
+	FontData[] fds = new FontData[n_families[0]];
+	Hashtable familyTable = new Hashtable();
 	for (int i=0; i<n_families[0]; i++) {
 		OS.memmove(family, families[0] + i * OS.PTR_SIZEOF, OS.PTR_SIZEOF);
-		boolean match = true;
-		if (faceName != null) {
-			long /*int*/ familyName = OS.pango_font_family_get_name(family[0]);
-			int length = OS.strlen(familyName);
-			byte[] buffer = new byte[length];
-			OS.memmove(buffer, familyName, length);
-			String name = new String(Converter.mbcsToWcs(null, buffer));
-			match = Compatibility.equalsIgnoreCase(faceName, name);
+		long /*int*/ familyName = OS.pango_font_family_get_name(family[0]);
+		int length = OS.strlen(familyName);
+		byte[] buffer = new byte[length];
+		OS.memmove(buffer, familyName, length);
+		String name = new String(Converter.mbcsToWcs(null, buffer));
+		int start = nFds;
+		OS.pango_font_family_list_faces(family[0], faces, n_faces);
+		for (int j=0; j<n_faces[0]; j++) {
+			OS.memmove(face, faces[0] + j * OS.PTR_SIZEOF, OS.PTR_SIZEOF);
+			long /*int*/ fontDesc = OS.pango_font_face_describe(face[0]);
+			Font font = Font.gtk_new(this, fontDesc);
+			FontData data = font.getFontData()[0];
+			if (nFds == fds.length) {
+				FontData[] newFds = new FontData[fds.length + n_families[0]];
+				System.arraycopy(fds, 0, newFds, 0, nFds);
+				fds = newFds;
+			}
+			fds[nFds++] = data;
+			OS.pango_font_description_free(fontDesc);
 		}
-		if (match) {
-		    OS.pango_font_family_list_faces(family[0], faces, n_faces);
-		    for (int j=0; j<n_faces[0]; j++) {
-		        OS.memmove(face, faces[0] + j * OS.PTR_SIZEOF, OS.PTR_SIZEOF);
-		        long /*int*/ fontDesc = OS.pango_font_face_describe(face[0]);
-		        Font font = Font.gtk_new(this, fontDesc);
-		        FontData data = font.getFontData()[0];
-				if (nFds == fds.length) {
-					FontData[] newFds = new FontData[fds.length + n_families[0]];
-					System.arraycopy(fds, 0, newFds, 0, nFds);
-					fds = newFds;
-				}
-				fds[nFds++] = data;
-				OS.pango_font_description_free(fontDesc);
-		    }
-		    OS.g_free(faces[0]);
-		    if (faceName != null) break;
+		OS.g_free(faces[0]);
+		String key = name.toLowerCase(Locale.ENGLISH);
+		if (!familyTable.containsKey(key)) {
+			FontData[] familyFds = new FontData[nFds - start];
+			System.arraycopy(fds, start, familyFds, 0, familyFds.length);
+			familyTable.put(key, familyFds);
 		}
 	}
 	OS.g_free(families[0]);
 	OS.g_object_unref(context);
-	if (nFds == fds.length) return fds;
-	FontData[] result = new FontData[nFds];
-	System.arraycopy(fds, 0, result, 0, nFds);
-	return result;
+	if (nFds != fds.length) {
+		FontData[] newFds = new FontData[nFds];
+		System.arraycopy(fds, 0, newFds, 0, nFds);
+		fds = newFds;
+	}
+	fontList = fds;
+	fontFamilies = familyTable;
 }
 
 Point getScreenDPI () {
@@ -549,6 +613,25 @@ public Font getSystemFont () {
 	return systemFont;
 }
 
+/**
+ * Returns the statistics of the text extents measured by the GCs of
+ * the receiver: the number of hits, misses and evictions, and the
+ * number of extents which are kept.
+ * <p>
+ * <b>IMPORTANT:</b> This method is <em>not</em> part of the SWT
+ * public API. It is marked protected only so that it can be shared
+ * within the packages provided by SWT. It is not available on all
+ * platforms and should never be called from application code.
+ * </p>
+ *
+ * @return the statistics of the text extents
+ *
+ * @noreference This method is not intended to be referenced by clients.
+ */
+protected int [] getTextExtentStatistics () {
+	return textExtents.getStatistics();
+}
+
 /**
  * Returns <code>true</code> if the underlying window system prints out
  * warning messages on the console, and <code>setWarnings</code>
@@ -747,7 +830,14 @@ public boolean loadFont (String path) {
 	checkDevice();
 	if (path == null) SWT.error (SWT.ERROR_NULL_ARGUMENT);
 	byte [] buffer = Converter.wcsToMbcs (null, path, true);
-	return OS.FcConfigAppFontAddFile (0, buffer);
+	boolean loaded = OS.FcConfigAppFontAddFile (0, buffer);
+	if (loaded) {
+		synchronized (fontListLock) {
+			fontList = null;
+			fontFamilies = null;
+		}
+	}
+	return loaded;
 }
 
 long /*int*/ logProc (long /*int*/ log_domain, long /*int*/ log_level, long /*int*/ message, long /*int*/ user_data) {
@@ -826,6 +916,7 @@ protected void release () {
 	/* Dispose the default font */
 	if (systemFont != null) systemFont.dispose ();
 	systemFont = null;
+	textExtents.clear();
 
 	if (gdkColors != null) {
 		if (!OS.GTK3) {
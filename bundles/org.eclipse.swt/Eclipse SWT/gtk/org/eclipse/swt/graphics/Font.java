@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -146,7 +146,10 @@ public Font(Device device, String name, int height, int style) {
 
 @Override
 void destroy() {
-	OS.pango_font_description_free(handle);
+	if (device.fonts.release(handle)) {
+		device.textExtents.remove(handle);
+		OS.pango_font_description_free(handle);
+	}
 	handle = 0;
 }
 
@@ -247,6 +250,18 @@ void init(String name, float height, int style, byte[] fontString) {
 	if (height < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 	Point dpi = device.dpi, screenDPI = device.getScreenDPI();
 	float size = height * dpi.y / screenDPI.y;
+	/*
+	* Equal fonts share one description, which is freed
+	* when the last of them is disposed.
+	*/
+	String key;
+	if (fontString != null) {
+		key = "\n" + new String(Converter.mbcsToWcs(null, fontString)); //$NON-NLS-1$
+	} else {
+		key = name + '\n' + size + '\n' + (style & (SWT.BOLD | SWT.ITALIC | SWT.ROMAN));
+	}
+	handle = device.fonts.acquire(key);
+	if (handle != 0) return;
 	if (fontString != null) {
 		handle = OS.pango_font_description_from_string (fontString);
 		if (handle == 0) SWT.error(SWT.ERROR_NO_HANDLES);
@@ -267,6 +282,11 @@ void init(String name, float height, int style, byte[] fontString) {
 		OS.pango_font_description_set_style(handle, pangoStyle);
 		OS.pango_font_description_set_weight(handle, pangoWeight);
 	}
+	long /*int*/ shared = device.fonts.add(key, handle);
+	if (shared != handle) {
+		OS.pango_font_description_free(handle);
+		handle = shared;
+	}
 }
 
 /**
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.util.Hashtable;
+import org.eclipse.swt.internal.LONG;
+
+/**
+ * Instances of this class keep the font descriptions which are
+ * shared by the equal fonts of a device.
+ * <p>
+ * Each description is keyed by the font data it was created from,
+ * and counts the fonts which use it, so that it is only freed when
+ * the last of them is disposed.
+ * </p>
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+final class FontTable {
+	Hashtable keys = new Hashtable();
+	Hashtable handles = new Hashtable();
+
+	static final class Entry {
+		String key;
+		long /*int*/ handle;
+		int count;
+	}
+
+/*
+* Answers the description of the key, counting the font which
+* uses it, or 0 if there is none.
+*/
+synchronized long /*int*/ acquire(String key) {
+	Entry entry = (Entry) keys.get(key);
+	if (entry == null) return 0;
+	entry.count++;
+	return entry.handle;
+}
+
+/*
+* Adds the description of the key and answers the description
+* the font should use, which is another one if an equal font
+* added it first.
+*/
+synchronized long /*int*/ add(String key, long /*int*/ handle) {
+	Entry entry = (Entry) keys.get(key);
+	if (entry == null) {
+		entry = new Entry();
+		entry.key = key;
+		entry.handle = handle;
+		keys.put(key, entry);
+		handles.put(new LONG(handle), entry);
+	}
+	entry.count++;
+	return entry.handle;
+}
+
+/*
+* Releases the description for a font which is disposed, and
+* answers whether it is no longer used and should be freed.
+*/
+synchronized boolean release(long /*int*/ handle) {
+	LONG key = new LONG(handle);
+	Entry entry = (Entry) handles.get(key);
+	if (entry == null) return true;
+	if (--entry.count > 0) return false;
+	handles.remove(key);
+	keys.remove(entry.key);
+	return true;
+}
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -73,6 +73,7 @@ public final class GC extends Resource {
 	
 	Drawable drawable;
 	GCData data;
+	boolean fontOptions;
 
 	final static int FOREGROUND = 1 << 0;
 	final static int BACKGROUND = 1 << 1;
@@ -3902,7 +3903,7 @@ void setString(String string, int flags) {
 		return;
 	}
 	byte[] buffer;
-	int mnemonic, length = string.length ();
+	int mnemonic, byteCount, length = string.length ();
 	long /*int*/ layout = data.layout;
 	char[] text = new char[length];
 	string.getChars(0, length, text, 0);	
@@ -3916,6 +3917,7 @@ void setString(String string, int flags) {
 		buffer = new byte[buffer1.length + buffer2.length];
 		System.arraycopy(buffer1, 0, buffer, 0, buffer1.length);
 		System.arraycopy(buffer2, 0, buffer, buffer1.length, buffer2.length);
+		byteCount = buffer.length;
 		long /*int*/ attr_list = OS.pango_attr_list_new();
 		long /*int*/ attr = OS.pango_attr_underline_new(OS.PANGO_UNDERLINE_LOW);
 		PangoAttribute attribute = new PangoAttribute();
@@ -3927,10 +3929,15 @@ void setString(String string, int flags) {
 		OS.pango_layout_set_attributes(layout, attr_list);
 		OS.pango_attr_list_unref(attr_list);
 	} else {
-		buffer = Converter.wcsToMbcs(null, text, false);
+		/*
+		* Pango copies the text, so it is converted into the
+		* reusable buffer and only the converted bytes are used.
+		*/
+		buffer = Converter.getByteBuffer(length * 3);
+		byteCount = Converter.wcsToMbcs(text, 0, length, buffer, 0);
 		OS.pango_layout_set_attributes(layout, 0);
 	}
-	OS.pango_layout_set_text(layout, buffer, buffer.length);
+	OS.pango_layout_set_text(layout, buffer, byteCount);
 	OS.pango_layout_set_single_paragraph_mode(layout, (flags & SWT.DRAW_DELIMITER) == 0);
 	OS.pango_layout_set_tabs(layout, (flags & SWT.DRAW_TAB) != 0 ? 0 : data.device.emptyTab);
 	data.string = string;
@@ -3984,6 +3991,7 @@ public void setTextAntialias(int antialias) {
 	if (data.context == 0) createLayout();
 	OS.pango_cairo_context_set_font_options(data.context, options);
     Cairo.cairo_font_options_destroy(options);
+	fontOptions = true;
 }
 
 /**
@@ -4142,11 +4150,27 @@ public Point textExtent(String string) {
 public Point textExtent(String string, int flags) {
 	if (handle == 0) SWT.error(SWT.ERROR_GRAPHIC_DISPOSED);
 	if (string == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	/*
+	* The extent only depends on the font, the flags and the direction
+	* of the receiver, so it is kept by the device for the other GCs,
+	* unless the font options of the receiver were changed.
+	*/
+	TextExtentCache cache = fontOptions ? null : device.textExtents;
+	long /*int*/ font = data.font != null ? data.font.handle : 0;
+	int key = flags & (SWT.DRAW_DELIMITER | SWT.DRAW_TAB | SWT.DRAW_MNEMONIC);
+	if ((data.style & SWT.MIRRORED) != 0) key |= 1 << 31;
+	if (cache != null && font != 0) {
+		Point extent = cache.get(font, string, key);
+		if (extent != null) return extent;
+	}
 	setString(string, flags);
 	checkGC(FONT);
 	if (data.stringWidth == -1) {
 		computeStringSize();
 	}
+	if (cache != null && font != 0) {
+		cache.put(font, string, key, data.stringWidth, data.stringHeight);
+	}
 	return new Point(data.stringWidth, data.stringHeight);
 }
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -664,6 +664,25 @@ public Image(Device device, InputStream stream) {
 public Image(Device device, String filename) {
 	super(device);
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	ImageDataCache cache = ImageDataCache.getDefault();
+	if (cache != null) {
+		/*
+		* When image data is cached, load the file with ImageLoader so
+		* that loading it again takes the cached data instead of decoding
+		* it with GdkPixbuf. The cached data is only read, so it is not
+		* copied. Files that ImageLoader cannot read are still loaded
+		* natively below.
+		*/
+		ImageData[] images = null;
+		try {
+			images = cache.load(filename, new ImageLoader(), false);
+		} catch (SWTException e) {}
+		if (images != null && images.length > 0) {
+			init(images[0]);
+			init();
+			return;
+		}
+	}
 	initNative(filename);
 	if (this.pixmap == 0 && this.surface == 0) init(new ImageData(filename));
 	init();
@@ -1366,32 +1385,36 @@ void init(ImageData image) {
 			destOrder = ImageData.LSB_FIRST;
 		}
 		byte[] buffer = image.data;
-		if (!palette.isDirect || image.depth != destDepth || stride != image.bytesPerLine || palette.redMask != redMask || palette.greenMask != greenMask || palette.blueMask != blueMask || destOrder != image.getByteOrder()) {
+		boolean premultiplied = false;
+		if (hasAlpha || !palette.isDirect || image.depth != destDepth || stride != image.bytesPerLine || palette.redMask != redMask || palette.greenMask != greenMask || palette.blueMask != blueMask || destOrder != image.getByteOrder()) {
 			buffer = new byte[stride * height];
-			if (palette.isDirect) {
-				ImageData.blit(ImageData.BLIT_SRC,
-					image.data, image.depth, image.bytesPerLine, image.getByteOrder(), 0, 0, width, height, palette.redMask, palette.greenMask, palette.blueMask,
-					ImageData.ALPHA_OPAQUE, null, 0, 0, 0, 
-					buffer, destDepth, stride, destOrder, 0, 0, width, height, redMask, greenMask, blueMask,
-					false, false);
-			} else {
-				RGB[] rgbs = palette.getRGBs();
-				int length = rgbs.length;
-				byte[] srcReds = new byte[length];
-				byte[] srcGreens = new byte[length];
-				byte[] srcBlues = new byte[length];
-				for (int i = 0; i < rgbs.length; i++) {
-					RGB rgb = rgbs[i];
-					if (rgb == null) continue;
-					srcReds[i] = (byte)rgb.red;
-					srcGreens[i] = (byte)rgb.green;
-					srcBlues[i] = (byte)rgb.blue;
+			premultiplied = ImageData.blitPremultiplied(image, buffer, stride, destOrder);
+			if (!premultiplied) {
+				if (palette.isDirect) {
+					ImageData.blit(ImageData.BLIT_SRC,
+						image.data, image.depth, image.bytesPerLine, image.getByteOrder(), 0, 0, width, height, palette.redMask, palette.greenMask, palette.blueMask,
+						ImageData.ALPHA_OPAQUE, null, 0, 0, 0, 
+						buffer, destDepth, stride, destOrder, 0, 0, width, height, redMask, greenMask, blueMask,
+						false, false);
+				} else {
+					RGB[] rgbs = palette.getRGBs();
+					int length = rgbs.length;
+					byte[] srcReds = new byte[length];
+					byte[] srcGreens = new byte[length];
+					byte[] srcBlues = new byte[length];
+					for (int i = 0; i < rgbs.length; i++) {
+						RGB rgb = rgbs[i];
+						if (rgb == null) continue;
+						srcReds[i] = (byte)rgb.red;
+						srcGreens[i] = (byte)rgb.green;
+						srcBlues[i] = (byte)rgb.blue;
+					}
+					ImageData.blit(ImageData.BLIT_SRC,
+						image.data, image.depth, image.bytesPerLine, image.getByteOrder(), 0, 0, width, height, srcReds, srcGreens, srcBlues,
+						ImageData.ALPHA_OPAQUE, null, 0, 0, 0,
+						buffer, destDepth, stride, destOrder, 0, 0, width, height, redMask, greenMask, blueMask,
+						false, false);
 				}
-				ImageData.blit(ImageData.BLIT_SRC,
-					image.data, image.depth, image.bytesPerLine, image.getByteOrder(), 0, 0, width, height, srcReds, srcGreens, srcBlues,
-					ImageData.ALPHA_OPAQUE, null, 0, 0, 0,
-					buffer, destDepth, stride, destOrder, 0, 0, width, height, redMask, greenMask, blueMask,
-					false, false);
 			}
 		}
 		boolean isIcon = image.getTransparencyType() == SWT.TRANSPARENCY_MASK;
@@ -1410,21 +1433,23 @@ void init(ImageData image) {
 					transparentPixel = rgb.red << 16 | rgb.green << 8 | rgb.blue;
 				}
 			}
-			ImageData mask = image.getTransparencyMask();
-			for (int y = 0, offset = 0; y < height; y++) {
-				for (int x=0; x<width; x++, offset += 4) {
-					int alpha = mask.getPixel(x, y) == 0 ? 0 : 0xff;
-					/* pre-multiplied alpha */
-					int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
-					r = (r + (r >> 8)) >> 8;
-					int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
-					g = (g + (g >> 8)) >> 8;
-					int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
-					b = (b + (b >> 8)) >> 8;
-					buffer[offset + oa] = (byte)alpha;
-					buffer[offset + or] = (byte)r;
-					buffer[offset + og] = (byte)g;
-					buffer[offset + ob] = (byte)b;
+			if (!premultiplied) {
+				ImageData mask = image.getTransparencyMask();
+				for (int y = 0, offset = 0; y < height; y++) {
+					for (int x=0; x<width; x++, offset += 4) {
+						int alpha = mask.getPixel(x, y) == 0 ? 0 : 0xff;
+						/* pre-multiplied alpha */
+						int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
+						r = (r + (r >> 8)) >> 8;
+						int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
+						g = (g + (g >> 8)) >> 8;
+						int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
+						b = (b + (b >> 8)) >> 8;
+						buffer[offset + oa] = (byte)alpha;
+						buffer[offset + or] = (byte)r;
+						buffer[offset + og] = (byte)g;
+						buffer[offset + ob] = (byte)b;
+					}
 				}
 			}
 		} else {
@@ -1433,7 +1458,9 @@ void init(ImageData image) {
 				this.alphaData = new byte[image.alphaData.length];
 				System.arraycopy(image.alphaData, 0, this.alphaData, 0, alphaData.length);
 			}
-			if (this.alpha != -1) {
+			if (premultiplied) {
+				/* alpha was applied by ImageData.blitPremultiplied() */
+			} else if (this.alpha != -1) {
 				for (int y = 0, offset = 0; y < height; y++) {
 					for (int x=0; x<width; x++, offset += 4) {
 						int alpha = this.alpha;
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.util.Hashtable;
+
+/**
+ * Instances of this class keep the extents of the strings measured
+ * by the GCs of a device, keyed by the handle of the font, the string
+ * and the flags.
+ * <p>
+ * When there are more entries than the limit of the cache, the least
+ * recently used entries are evicted. The entries of a font are removed
+ * when it is disposed, as its handle may be reused.
+ * </p>
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+final class TextExtentCache {
+	int limit;
+	int hitCount, missCount, evictionCount;
+
+	/* The entries by key, and in order of use, the most recent first */
+	Hashtable entries = new Hashtable();
+	Entry first, last;
+	Entry key = new Entry();
+
+	static final class Entry {
+		long /*int*/ font;
+		String string;
+		int flags, width, height;
+		Entry previous, next;
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Entry)) return false;
+			Entry entry = (Entry) object;
+			return font == entry.font && flags == entry.flags && string.equals(entry.string);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((int)/*64*/font * 31 + flags) * 31 + string.hashCode();
+		}
+	}
+
+TextExtentCache(int limit) {
+	this.limit = limit;
+}
+
+synchronized void clear() {
+	entries.clear();
+	first = last = null;
+}
+
+synchronized Point get(long /*int*/ font, String string, int flags) {
+	key.font = font;
+	key.string = string;
+	key.flags = flags;
+	Entry entry = (Entry) entries.get(key);
+	key.string = null;
+	if (entry == null) {
+		missCount++;
+		return null;
+	}
+	hitCount++;
+	if (entry != first) {
+		unlink(entry);
+		link(entry);
+	}
+	return new Point(entry.width, entry.height);
+}
+
+synchronized int[] getStatistics() {
+	return new int[] {hitCount, missCount, evictionCount, entries.size()};
+}
+
+void link(Entry entry) {
+	entry.previous = null;
+	entry.next = first;
+	if (first != null) first.previous = entry;
+	first = entry;
+	if (last == null) last = entry;
+}
+
+synchronized void put(long /*int*/ font, String string, int flags, int width, int height) {
+	if (limit == 0) return;
+	Entry entry = new Entry();
+	entry.font = font;
+	entry.string = string;
+	entry.flags = flags;
+	entry.width = width;
+	entry.height = height;
+	Entry oldEntry = (Entry) entries.put(entry, entry);
+	if (oldEntry != null) unlink(oldEntry);
+	link(entry);
+	while (entries.size() > limit) {
+		Entry lastEntry = last;
+		unlink(lastEntry);
+		entries.remove(lastEntry);
+		evictionCount++;
+	}
+}
+
+synchronized void remove(long /*int*/ font) {
+	Entry entry = first;
+	while (entry != null) {
+		Entry next = entry.next;
+		if (entry.font == font) {
+			unlink(entry);
+			entries.remove(entry);
+		}
+		entry = next;
+	}
+}
+
+void unlink(Entry entry) {
+	if (entry.previous != null) {
+		entry.previous.next = entry.next;
+	} else {
+		first = entry.next;
+	}
+	if (entry.next != null) {
+		entry.next.previous = entry.previous;
+	} else {
+		last = entry.previous;
+	}
+	entry.previous = entry.next = null;
+}
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,8 +11,6 @@
 package org.eclipse.swt.internal;
 
 
-import org.eclipse.swt.internal.gtk.OS;
-
 /**
  * This class implements the conversions between unicode characters
  * and the <em>platform supported</em> representation for characters.
@@ -20,12 +18,25 @@ import org.eclipse.swt.internal.gtk.OS;
  * Note that, unicode characters which can not be found in the platform
  * encoding will be converted to an arbitrary platform specific character.
  * </p>
+ * <p>
+ * The platform representation is UTF-8. The conversions are done in
+ * Java and behave like <code>g_utf16_to_utf8()</code> and
+ * <code>g_utf8_to_utf16()</code>: they stop at the first null character,
+ * a high surrogate at the end of the characters is dropped, and input
+ * which is not valid, such as a lone surrogate or a malformed byte
+ * sequence, converts to nothing.
+ * </p>
  */
+@SuppressWarnings({"rawtypes", "unchecked"})
 public final class Converter {
 	public static final byte [] NullByteArray = new byte [1];
 	public static final byte [] EmptyByteArray = new byte [0];
 	public static final char [] EmptyCharArray = new char [0];
 
+	/* Reusable buffer of each thread */
+	static final ThreadLocal ByteBuffers = new ThreadLocal ();
+	static final int BUFFER_LIMIT = 64 * 1024;
+
 /**
  * Returns the default code page for the platform where the
  * application is currently running.
@@ -36,17 +47,99 @@ public static String defaultCodePage () {
 	return "UTF8";
 }
 
+/**
+ * Answers a byte buffer of at least the given length which the
+ * calling thread can reuse. Its contents are only valid until the
+ * next call of this method by the same thread.
+ */
+public static byte [] getByteBuffer (int length) {
+	if (length > BUFFER_LIMIT) return new byte [length];
+	byte [] buffer = (byte []) ByteBuffers.get ();
+	if (buffer == null || buffer.length < length) {
+		ByteBuffers.set (buffer = new byte [Math.max (length, 256)]);
+	}
+	return buffer;
+}
+
 public static char [] mbcsToWcs (String codePage, byte [] buffer) {
-	long /*int*/ [] items_written = new long /*int*/ [1];
-	long /*int*/ ptr = OS.g_utf8_to_utf16 (buffer, buffer.length, null, items_written, null);
-	if (ptr == 0) return EmptyCharArray;
-	int length = (int)/*64*/items_written [0];
+	/*
+	* Like g_utf8_to_utf16(), the characters are counted
+	* first, so that the result has the right length.
+	*/
+	int length = mbcsToWcs (buffer, 0, buffer.length, null, 0);
+	if (length == 0) return EmptyCharArray;
 	char [] chars = new char [length];
-	OS.memmove (chars, ptr, length * 2);
-	OS.g_free (ptr);
+	mbcsToWcs (buffer, 0, buffer.length, chars, 0);
 	return chars;
 }
 
+/**
+ * Converts UTF-8 bytes to characters, and answers the number of
+ * characters. The buffer needs room for <code>length</code>
+ * characters. When the buffer is <code>null</code>, the characters
+ * are only counted.
+ */
+public static int mbcsToWcs (byte [] bytes, int start, int length, char [] buffer, int offset) {
+	int end = start + length, index = offset, i = start;
+
+	/* Convert ASCII without decoding */
+	while (i < end) {
+		byte b = bytes [i];
+		if (b <= 0) break;
+		if (buffer != null) buffer [index] = (char) b;
+		index++;
+		i++;
+	}
+	while (i < end) {
+		int ch = bytes [i] & 0xFF;
+		if (ch < 0x80) {
+			if (ch == 0) break;
+			if (buffer != null) buffer [index] = (char) ch;
+			index++;
+			i++;
+			continue;
+		}
+		int count, min;
+		if (ch < 0xC0) {
+			return 0;
+		} else if (ch < 0xE0) {
+			count = 1;
+			ch &= 0x1F;
+			min = 0x80;
+		} else if (ch < 0xF0) {
+			count = 2;
+			ch &= 0x0F;
+			min = 0x800;
+		} else if (ch < 0xF8) {
+			count = 3;
+			ch &= 0x07;
+			min = 0x10000;
+		} else {
+			return 0;
+		}
+		if (end - i <= count) return 0;
+		for (int j=1; j<=count; j++) {
+			int next = bytes [i + j];
+			if ((next & 0xC0) != 0x80) return 0;
+			ch = (ch << 6) | (next & 0x3F);
+		}
+		if (ch < min || ch > 0x10FFFF || (0xD800 <= ch && ch < 0xE000)) return 0;
+		i += count + 1;
+		if (ch < 0x10000) {
+			if (buffer != null) buffer [index] = (char) ch;
+			index++;
+		} else {
+			ch -= 0x10000;
+			if (buffer != null) {
+				buffer [index] = (char) (0xD800 + (ch >> 10));
+				buffer [index + 1] = (char) (0xDC00 + (ch & 0x3FF));
+			}
+			index += 2;
+		}
+	}
+	return index - offset;
+}
+
 public static byte [] wcsToMbcs (String codePage, String string, boolean terminate) {
 	int length = string.length ();
 	char [] buffer = new char [length];
@@ -55,18 +148,70 @@ public static byte [] wcsToMbcs (String codePage, String string, boolean termina
 }
 
 public static byte [] wcsToMbcs (String codePage, char [] buffer, boolean terminate) {
-	long /*int*/ [] items_read = new long /*int*/ [1], items_written = new long /*int*/ [1];
 	/*
-	* Note that g_utf16_to_utf8()  stops converting 
-	* when it finds the first NULL.
+	* Like g_utf16_to_utf8(), the bytes are counted
+	* first, so that the result has the right length.
 	*/
-	long /*int*/ ptr = OS.g_utf16_to_utf8 (buffer, buffer.length, items_read, items_written, null);
-	if (ptr == 0) return terminate ? NullByteArray : EmptyByteArray;
-	int written = (int)/*64*/items_written [0];
-	byte [] bytes = new byte [written + (terminate ? 1 : 0)];
-	OS.memmove (bytes, ptr, written);
-	OS.g_free (ptr);
+	int length = wcsToMbcs (buffer, 0, buffer.length, null, 0);
+	/* The result is a new array, as callers may write into it */
+	if (length == 0) return new byte [terminate ? 1 : 0];
+	byte [] bytes = new byte [length + (terminate ? 1 : 0)];
+	wcsToMbcs (buffer, 0, buffer.length, bytes, 0);
 	return bytes;
 }
 
+/**
+ * Converts characters to UTF-8 bytes, and answers the number of
+ * bytes, which are not null terminated. The buffer needs room for
+ * <code>length * 3</code> bytes. When the buffer is <code>null</code>,
+ * the bytes are only counted.
+ */
+public static int wcsToMbcs (char [] chars, int start, int length, byte [] buffer, int offset) {
+	int end = start + length, index = offset, i = start;
+
+	/* Convert ASCII without encoding */
+	while (i < end) {
+		char ch = chars [i];
+		if (ch >= 0x80 || ch == 0) break;
+		if (buffer != null) buffer [index] = (byte) ch;
+		index++;
+		i++;
+	}
+	while (i < end) {
+		int ch = chars [i++];
+		if (ch < 0x80) {
+			if (ch == 0) break;
+			if (buffer != null) buffer [index] = (byte) ch;
+			index++;
+		} else if (ch < 0x800) {
+			if (buffer != null) {
+				buffer [index] = (byte) (0xC0 | (ch >> 6));
+				buffer [index + 1] = (byte) (0x80 | (ch & 0x3F));
+			}
+			index += 2;
+		} else if (0xD800 <= ch && ch < 0xE000) {
+			if (ch >= 0xDC00) return 0;
+			if (i == end || chars [i] == 0) break;
+			int low = chars [i++];
+			if (low < 0xDC00 || low >= 0xE000) return 0;
+			ch = 0x10000 + ((ch - 0xD800) << 10) + (low - 0xDC00);
+			if (buffer != null) {
+				buffer [index] = (byte) (0xF0 | (ch >> 18));
+				buffer [index + 1] = (byte) (0x80 | ((ch >> 12) & 0x3F));
+				buffer [index + 2] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+				buffer [index + 3] = (byte) (0x80 | (ch & 0x3F));
+			}
+			index += 4;
+		} else {
+			if (buffer != null) {
+				buffer [index] = (byte) (0xE0 | (ch >> 12));
+				buffer [index + 1] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+				buffer [index + 2] = (byte) (0x80 | (ch & 0x3F));
+			}
+			index += 3;
+		}
+	}
+	return index - offset;
+}
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2014 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -57,6 +57,7 @@ public abstract class Control extends Widget implements Drawable {
 	Object layoutData;
 	Accessible accessible;
 	Control labelRelation;
+	GdkRectangle damage;
 
 Control () {
 }
@@ -3156,7 +3157,7 @@ long /*int*/ gtk_draw (long /*int*/ widget, long /*int*/ cairo) {
 	if (!hooksPaint ()) return 0;
 	GdkRectangle rect = new GdkRectangle ();
 	OS.gdk_cairo_get_clip_rectangle (cairo, rect);
-	Event event = new Event ();
+	Event event = display.newEvent ();
 	event.count = 1;
 	event.x = rect.x;
 	event.y = rect.y;
@@ -3174,6 +3175,7 @@ long /*int*/ gtk_draw (long /*int*/ widget, long /*int*/ cairo) {
 	sendEvent (SWT.Paint, event);
 	gc.dispose ();
 	event.gc = null;
+	display.releaseEvent (event);
 	return 0;
 }
 
@@ -3183,7 +3185,7 @@ long /*int*/ gtk_expose_event (long /*int*/ widget, long /*int*/ eventPtr) {
 	if (!hooksPaint ()) return 0;
 	GdkEventExpose gdkEvent = new GdkEventExpose ();
 	OS.memmove(gdkEvent, eventPtr, GdkEventExpose.sizeof);
-	Event event = new Event ();
+	Event event = display.newEvent ();
 	event.count = gdkEvent.count;
 	event.x = gdkEvent.area_x;
 	event.y = gdkEvent.area_y;
@@ -3197,6 +3199,7 @@ long /*int*/ gtk_expose_event (long /*int*/ widget, long /*int*/ eventPtr) {
 	sendEvent (SWT.Paint, event);
 	gc.dispose ();
 	event.gc = null;
+	display.releaseEvent (event);
 	return 0;
 }
 
@@ -3324,6 +3327,27 @@ long /*int*/ gtk_mnemonic_activate (long /*int*/ widget, long /*int*/ arg1) {
 long /*int*/ gtk_motion_notify_event (long /*int*/ widget, long /*int*/ event) {
 	GdkEventMotion gdkEvent = new GdkEventMotion ();
 	OS.memmove (gdkEvent, event, GdkEventMotion.sizeof);
+	/*
+	* When events are coalesced, a motion that is followed by another
+	* one in the queue is not reported, as the listeners would only
+	* see the latest position.
+	*/
+	if ((state & COALESCE_EVENTS) != 0 && gdkEvent.is_hint == 0) {
+		long /*int*/ nextEvent = OS.gdk_event_peek ();
+		if (nextEvent != 0) {
+			boolean merge = false;
+			if (OS.GDK_EVENT_TYPE (nextEvent) == OS.GDK_MOTION_NOTIFY) {
+				GdkEventMotion nextMotion = new GdkEventMotion ();
+				OS.memmove (nextMotion, nextEvent, GdkEventMotion.sizeof);
+				merge = nextMotion.window == gdkEvent.window && nextMotion.state == gdkEvent.state;
+			}
+			OS.gdk_event_free (nextEvent);
+			if (merge) {
+				display.coalescedMouseMoves++;
+				return 0;
+			}
+		}
+	}
 	if (this == display.currentControl && (hooks (SWT.MouseHover) || filters (SWT.MouseHover))) {
 		display.addMouseHoverTimeout (handle);
 	}
@@ -3774,6 +3798,28 @@ void redrawWidget (int x, int y, int width, int height, boolean redrawAll, boole
 		rect.width = width;
 		rect.height = height;
 	}
+	/*
+	* When events are coalesced, a redraw inside the area which is
+	* waiting to be painted is merged with it instead of being given
+	* to GDK again. Otherwise, the area grows to the bounds of both,
+	* so that a single Paint event covers them. The area is forgotten
+	* when the control receives an expose.
+	*/
+	if ((state & COALESCE_EVENTS) != 0 && !all) {
+		if (damage != null) {
+			int right = Math.max (damage.x + damage.width, rect.x + rect.width);
+			int bottom = Math.max (damage.y + damage.height, rect.y + rect.height);
+			if (damage.x <= rect.x && damage.y <= rect.y && right == damage.x + damage.width && bottom == damage.y + damage.height) {
+				display.coalescedPaints++;
+				return;
+			}
+			rect.x = Math.min (damage.x, rect.x);
+			rect.y = Math.min (damage.y, rect.y);
+			rect.width = right - rect.x;
+			rect.height = bottom - rect.y;
+		}
+		damage = rect;
+	}
 	OS.gdk_window_invalidate_rect (window, rect, all);
 }
 
@@ -3934,7 +3980,7 @@ boolean sendMouseEvent (int type, int button, int time, double x, double y, bool
 
 boolean sendMouseEvent (int type, int button, int count, int detail, boolean send, int time, double x, double y, boolean is_hint, int state) {
 	if (!hooks (type) && !filters (type)) return true;
-	Event event = new Event ();
+	Event event = display.newEvent ();
 	event.time = time;
 	event.button = button;
 	event.detail = detail;
@@ -3951,13 +3997,14 @@ boolean sendMouseEvent (int type, int button, int count, int detail, boolean sen
 	}
 	if ((style & SWT.MIRRORED) != 0) event.x = getClientWidth () - event.x;
 	setInputState (event, state);
-	if (send) {
-		sendEvent (type, event);
-		if (isDisposed ()) return false;
-	} else {
+	if (!send) {
 		postEvent (type, event);
+		return event.doit;
 	}
-	return event.doit;
+	sendEvent (type, event);
+	boolean doit = event.doit;
+	display.releaseEvent (event);
+	return doit && !isDisposed ();
 }
 
 void setBackground () {
@@ -5475,6 +5522,7 @@ void updateLayout (boolean all) {
 long /*int*/ windowProc (long /*int*/ handle, long /*int*/ arg0, long /*int*/ user_data) {
 	switch ((int)/*64*/user_data) {
 		case EXPOSE_EVENT_INVERSE: {
+			damage = null;
 			if ((state & OBSCURED) != 0) break;
 			if (OS.USE_CAIRO) {
 				Control control = findBackgroundControl ();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2014 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -99,11 +99,24 @@ import org.eclipse.swt.graphics.*;
 public class Display extends Device {
 
 	/* Events Dispatching and Callback */
-	int gdkEventCount;
+	int gdkEventStart, gdkEventCount;
 	long /*int*/ [] gdkEvents;
 	Widget [] gdkEventWidgets;
 	int [] dispatchEvents;
 	Event [] eventQueue;
+	int eventQueueStart, eventQueueCount;
+	int coalescedMouseMoves, coalescedPaints;
+	static final String COALESCED_EVENTS_KEY = "org.eclipse.swt.internal.gtk.coalescedEvents"; //$NON-NLS-1$
+	Event [] eventPool;
+	Error [] eventPoolTraces;
+	int eventPoolCount, reusedEvents;
+	boolean reuseEvents, debugEvents;
+	static final int EVENT_POOL_SIZE = 8;
+	static final int RELEASED_EVENT = -1;
+	static final String REUSE_EVENTS_KEY = "org.eclipse.swt.internal.gtk.reuseEvents"; //$NON-NLS-1$
+	static final String DEBUG_EVENTS_KEY = "org.eclipse.swt.internal.gtk.debugEvents"; //$NON-NLS-1$
+	static final String REUSED_EVENTS_KEY = "org.eclipse.swt.internal.gtk.reusedEvents"; //$NON-NLS-1$
+	static final String TEXT_EXTENTS_KEY = "org.eclipse.swt.internal.gtk.textExtents"; //$NON-NLS-1$
 	long /*int*/ fds;
 	int allocated_nfds;
 	boolean wake;
@@ -175,10 +188,12 @@ public class Display extends Device {
 	TrayItem currentTrayItem;
 	
 	/* Timers */
-	int [] timerIds;
-	Runnable [] timerList;
+	TimerWheel timers;
+	int timerId, timerTolerance;
+	long timerDeadline;
 	Callback timerCallback;
 	long /*int*/ timerProc;
+	static final String TIMER_TOLERANCE_KEY = "org.eclipse.swt.internal.gtk.timerTolerance"; //$NON-NLS-1$
 	Callback windowTimerCallback;
 	long /*int*/ windowTimerProc;
 	
@@ -568,20 +583,29 @@ void addLayoutDeferred (Composite comp) {
 }
 
 void addGdkEvent (long /*int*/ event) {
+	/*
+	* The events are kept in a circular queue, starting
+	* at gdkEventStart, so that removing the first event
+	* does not move the others.
+	*/
 	if (gdkEvents == null) {
 		int length = GROW_SIZE;
 		gdkEvents = new long /*int*/ [length];
 		gdkEventWidgets = new Widget [length];
-		gdkEventCount = 0;
+		gdkEventStart = gdkEventCount = 0;
 	}
 	if (gdkEventCount == gdkEvents.length) {
-		int length = gdkEventCount + GROW_SIZE;
+		int length = gdkEventCount * 2;
+		int end = gdkEventCount - gdkEventStart;
 		long /*int*/ [] newEvents = new long /*int*/ [length];
-		System.arraycopy (gdkEvents, 0, newEvents, 0, gdkEventCount);
+		System.arraycopy (gdkEvents, gdkEventStart, newEvents, 0, end);
+		System.arraycopy (gdkEvents, 0, newEvents, end, gdkEventStart);
 		gdkEvents = newEvents;
 		Widget [] newWidgets = new Widget [length];
-		System.arraycopy (gdkEventWidgets, 0, newWidgets, 0, gdkEventCount);
+		System.arraycopy (gdkEventWidgets, gdkEventStart, newWidgets, 0, end);
+		System.arraycopy (gdkEventWidgets, 0, newWidgets, end, gdkEventStart);
 		gdkEventWidgets = newWidgets;
+		gdkEventStart = 0;
 	}
 	Widget widget = null;
 	long /*int*/ handle = OS.gtk_get_event_widget (event);
@@ -590,8 +614,9 @@ void addGdkEvent (long /*int*/ event) {
 			widget = getWidget (handle);
 		} while (widget == null && (handle = OS.gtk_widget_get_parent (handle)) != 0);
 	}
-	gdkEvents [gdkEventCount] = event;
-	gdkEventWidgets [gdkEventCount] = widget;
+	int index = (gdkEventStart + gdkEventCount) % gdkEvents.length;
+	gdkEvents [index] = event;
+	gdkEventWidgets [index] = widget;
 	gdkEventCount++;
 }
 
@@ -700,6 +725,53 @@ void addWidget (long /*int*/ handle, Widget widget) {
 	widgetTable [oldSlot] = widget;
 }
 
+/**
+ * Causes the <code>run()</code> method of the runnable to
+ * be invoked by the user-interface thread at the next 
+ * reasonable opportunity, unless a runnable with the same
+ * key is already waiting to be invoked. In that case, the
+ * given runnable replaces the waiting one, which is not
+ * invoked, and keeps its place in the queue. Keys are
+ * compared with <code>equals()</code>. This is useful for
+ * requests such as refreshing a view, which only need to
+ * run once however often they are made. A <code>null</code>
+ * key never matches, so that the runnable is always queued.
+ * <p>
+ * Note that at the time the runnable is invoked, widgets 
+ * that have the receiver as their display may have been
+ * disposed. Therefore, it is necessary to check for this
+ * case inside the runnable before accessing the widget.
+ * </p>
+ *
+ * @param key the key identifying the request, or <code>null</code>
+ * @param runnable code to run on the user-interface thread
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the runnable is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the receiver has been disposed</li>
+ * </ul>
+ * 
+ * @see #asyncExec(Runnable)
+ * @see Synchronizer#getMergeCount
+ *
+ * @since 3.104
+ */
+public void asyncExec (Object key, Runnable runnable) {
+	if (runnable == null) error (SWT.ERROR_NULL_ARGUMENT);
+	synchronized (Device.class) {
+		if (isDisposed ()) error (SWT.ERROR_DEVICE_DISPOSED);
+		synchronized (idleLock) {
+			if (idleNeeded && idleHandle == 0) {
+	 			//NOTE: calling unlocked function in OS
+				idleHandle = OS._g_idle_add (idleProc, 0);
+			}
+		}
+		synchronizer.asyncExec (key, runnable);
+	}
+}
+
 /**
  * Causes the <code>run()</code> method of the runnable to
  * be invoked by the user-interface thread at the next 
@@ -1661,6 +1733,24 @@ public Object getData (String key) {
 	if (key.equals (GET_EMISSION_PROC_KEY)) {
 		return new LONG (emissionProc);
 	}
+	if (key.equals (TIMER_TOLERANCE_KEY)) {
+		return new Integer (timerTolerance);
+	}
+	if (key.equals (COALESCED_EVENTS_KEY)) {
+		return new int [] {coalescedMouseMoves, coalescedPaints};
+	}
+	if (key.equals (REUSE_EVENTS_KEY)) {
+		return reuseEvents ? Boolean.TRUE : Boolean.FALSE;
+	}
+	if (key.equals (DEBUG_EVENTS_KEY)) {
+		return debugEvents ? Boolean.TRUE : Boolean.FALSE;
+	}
+	if (key.equals (REUSED_EVENTS_KEY)) {
+		return new Integer (reusedEvents);
+	}
+	if (key.equals (TEXT_EXTENTS_KEY)) {
+		return getTextExtentStatistics ();
+	}
 	if (keys == null) return null;
 	for (int i=0; i<keys.length; i++) {
 		if (keys [i].equals (key)) return values [i];
@@ -1726,6 +1816,17 @@ public static Display getDefault () {
 	}
 }
 
+static boolean isCleared (Event event, int type) {
+	return event.display == null && event.widget == null && event.type == type && event.detail == 0
+		&& event.item == null && event.index == 0 && event.gc == null && event.x == 0 && event.y == 0
+		&& event.width == 0 && event.height == 0 && event.count == 0 && event.time == 0
+		&& event.button == 0 && event.character == 0 && event.keyCode == 0 && event.keyLocation == 0
+		&& event.stateMask == 0 && event.start == 0 && event.end == 0 && event.text == null
+		&& event.segments == null && event.segmentsChars == null && event.doit && event.data == null
+		&& event.touches == null && event.xDirection == 0 && event.yDirection == 0
+		&& event.magnification == 0 && event.rotation == 0;
+}
+
 static boolean isValidClass (Class clazz) {
 	String name = clazz.getName ();
 	int index = name.lastIndexOf ('.');
@@ -3193,6 +3294,31 @@ long /*int*/ mouseHoverProc (long /*int*/ handle) {
 	return widget.hoverProc (handle);
 }
 
+/*
+* Answers an event for a widget to send. When events are reused,
+* it is taken from the pool of events that were released after
+* they were sent. In debug mode, an event which was changed since
+* it was released is reported, as a listener kept it, and the type
+* which marks a released event is reset.
+*/
+Event newEvent () {
+	if (eventPoolCount == 0) return new Event ();
+	Event event = eventPool [--eventPoolCount];
+	eventPool [eventPoolCount] = null;
+	if (eventPoolTraces != null) {
+		Error trace = eventPoolTraces [eventPoolCount];
+		eventPoolTraces [eventPoolCount] = null;
+		if (!isCleared (event, RELEASED_EVENT)) {
+			System.err.println ("***WARNING: Event used after it was released: " + event); //$NON-NLS-1$
+			trace.printStackTrace ();
+			return new Event ();
+		}
+		event.type = 0;
+	}
+	reusedEvents++;
+	return event;
+}
+
 /**
  * Generate a low level system event.
  * 
@@ -3337,36 +3463,40 @@ void postEvent (Event event) {
 	* Place the event at the end of the event queue.
 	* This code is always called in the Display's
 	* thread so it must be re-enterant but does not
-	* need to be synchronized.
+	* need to be synchronized.  The queue is circular,
+	* starting at eventQueueStart.
 	*/
-	if (eventQueue == null) eventQueue = new Event [4];
-	int index = 0;
-	int length = eventQueue.length;
-	while (index < length) {
-		if (eventQueue [index] == null) break;
-		index++;
+	if (eventQueue == null) {
+		eventQueue = new Event [4];
+		eventQueueStart = eventQueueCount = 0;
 	}
-	if (index == length) {
-		Event [] newQueue = new Event [length + 4];
-		System.arraycopy (eventQueue, 0, newQueue, 0, length);
+	int length = eventQueue.length;
+	if (eventQueueCount == length) {
+		int end = length - eventQueueStart;
+		Event [] newQueue = new Event [length * 2];
+		System.arraycopy (eventQueue, eventQueueStart, newQueue, 0, end);
+		System.arraycopy (eventQueue, 0, newQueue, end, eventQueueStart);
 		eventQueue = newQueue;
+		eventQueueStart = 0;
 	}
-	eventQueue [index] = event;
+	eventQueue [(eventQueueStart + eventQueueCount) % eventQueue.length] = event;
+	eventQueueCount++;
 }
 
 void putGdkEvents () {
 	if (gdkEventCount != 0) {
 		for (int i = 0; i < gdkEventCount; i++) {
-			long /*int*/ event = gdkEvents [i];
-			Widget widget = gdkEventWidgets [i];
+			int index = (gdkEventStart + i) % gdkEvents.length;
+			long /*int*/ event = gdkEvents [index];
+			Widget widget = gdkEventWidgets [index];
 			if (widget == null || !widget.isDisposed ()) {
 				OS.gdk_event_put (event);
 			}
 			OS.gdk_event_free (event);
-			gdkEvents [i] = 0;
-			gdkEventWidgets [i] = null;
+			gdkEvents [index] = 0;
+			gdkEventWidgets [index] = null;
 		}
-		gdkEventCount = 0;
+		gdkEventStart = gdkEventCount = 0;
 	}
 }
 
@@ -3550,13 +3680,9 @@ void releaseDisplay () {
 	if (shellMapProcClosure != 0) OS.g_closure_unref (shellMapProcClosure);
 
 	/* Dispose the timer callback */
-	if (timerIds != null) {
-		for (int i=0; i<timerIds.length; i++) {
-			if (timerIds [i] != 0) OS.g_source_remove (timerIds [i]);
-		}
-	}
-	timerIds = null;
-	timerList = null;
+	if (timerId != 0) OS.g_source_remove (timerId);
+	timerId = 0;
+	timers = null;
 	timerProc = 0;
 	timerCallback.dispose ();
 	timerCallback = null;
@@ -3658,6 +3784,47 @@ void releaseDisplay () {
 	exposeEvent = null;
 	visibilityEvent = null;
 	idleLock = null;
+	eventPool = null;
+	eventPoolTraces = null;
+	eventPoolCount = 0;
+}
+
+/*
+* Puts an event that was sent back in the pool, when events are
+* reused. Only the events that the display hands to listeners can
+* be released, and only after they were sent, as a posted event is
+* still in the event queue. In debug mode, the place where the event
+* was released is remembered, to report the listener that kept it,
+* and the event is given a type which is not valid, so that a listener
+* which reads it later does not mistake it for the event it was sent.
+*/
+void releaseEvent (Event event) {
+	if (!reuseEvents) return;
+	if (eventPool == null) eventPool = new Event [EVENT_POOL_SIZE];
+	if (eventPoolCount == eventPool.length) return;
+	if (debugEvents) {
+		if (eventPoolTraces == null) eventPoolTraces = new Error [EVENT_POOL_SIZE];
+		eventPoolTraces [eventPoolCount] = new Error (event.toString ());
+	}
+	event.display = null;
+	event.widget = event.item = null;
+	event.type = event.detail = event.index = 0;
+	event.gc = null;
+	event.x = event.y = event.width = event.height = 0;
+	event.count = event.time = event.button = 0;
+	event.character = 0;
+	event.keyCode = event.keyLocation = event.stateMask = 0;
+	event.start = event.end = 0;
+	event.text = null;
+	event.segments = null;
+	event.segmentsChars = null;
+	event.doit = true;
+	event.data = null;
+	event.touches = null;
+	event.xDirection = event.yDirection = 0;
+	event.magnification = event.rotation = 0;
+	if (debugEvents) event.type = RELEASED_EVENT;
+	eventPool [eventPoolCount++] = event;
 }
 
 /**
@@ -3693,12 +3860,11 @@ public void removeFilter (int eventType, Listener listener) {
 
 long /*int*/ removeGdkEvent () {
 	if (gdkEventCount == 0) return 0;
-	long /*int*/ event = gdkEvents [0];
+	long /*int*/ event = gdkEvents [gdkEventStart];
+	gdkEvents [gdkEventStart] = 0;
+	gdkEventWidgets [gdkEventStart] = null;
+	gdkEventStart = (gdkEventStart + 1) % gdkEvents.length;
 	--gdkEventCount;
-	System.arraycopy (gdkEvents, 1, gdkEvents, 0, gdkEventCount);
-	System.arraycopy (gdkEventWidgets, 1, gdkEventWidgets, 0, gdkEventCount);
-	gdkEvents [gdkEventCount] = 0;
-	gdkEventWidgets [gdkEventCount] = null;
 	if (gdkEventCount == 0) {
 		gdkEvents = null;
 		gdkEventWidgets = null;
@@ -3785,14 +3951,13 @@ boolean runDeferredEvents () {
 	* called in the Display's thread so it must
 	* be re-enterant but need not be synchronized.
 	*/
-	while (eventQueue != null) {
+	while (eventQueueCount != 0) {
 		
 		/* Take an event off the queue */
-		Event event = eventQueue [0];
-		if (event == null) break;
-		int length = eventQueue.length;
-		System.arraycopy (eventQueue, 1, eventQueue, 0, --length);
-		eventQueue [length] = null;
+		Event event = eventQueue [eventQueueStart];
+		eventQueue [eventQueueStart] = null;
+		eventQueueStart = (eventQueueStart + 1) % eventQueue.length;
+		eventQueueCount--;
 
 		/* Run the event */
 		Widget widget = event.widget;
@@ -3806,13 +3971,14 @@ boolean runDeferredEvents () {
 
 		/*
 		* At this point, the event queue could
-		* be null due to a recursive invokation
+		* be empty due to a recursive invokation
 		* when running the event.
 		*/
 	}
 
 	/* Clear the queue */
 	eventQueue = null;
+	eventQueueStart = 0;
 	return run;
 }
 
@@ -3854,6 +4020,7 @@ boolean runSettings () {
 	runSettings = false;
 	saveResources ();
 	initializeSystemColors ();
+	clearFontCaches ();
 	sendEvent (SWT.Settings, null);
 	Shell [] shells = getShells ();
 	for (int i=0; i<shells.length; i++) {
@@ -4057,6 +4224,26 @@ public void setData (String key, Object value) {
 		removeIdleProc ();
 		return;
 	}
+	if (key.equals (TIMER_TOLERANCE_KEY)) {
+		if (value != null && !(value instanceof Integer)) error (SWT.ERROR_INVALID_ARGUMENT);
+		timerTolerance = value != null ? Math.max (0, ((Integer) value).intValue ()) : 0;
+		return;
+	}
+	if (key.equals (REUSE_EVENTS_KEY)) {
+		if (value != null && !(value instanceof Boolean)) error (SWT.ERROR_INVALID_ARGUMENT);
+		reuseEvents = value != null && ((Boolean) value).booleanValue ();
+		if (!reuseEvents) eventPool = null;
+		eventPoolTraces = null;
+		eventPoolCount = 0;
+		return;
+	}
+	if (key.equals (DEBUG_EVENTS_KEY)) {
+		if (value != null && !(value instanceof Boolean)) error (SWT.ERROR_INVALID_ARGUMENT);
+		debugEvents = value != null && ((Boolean) value).booleanValue ();
+		eventPoolTraces = null;
+		eventPoolCount = 0;
+		return;
+	}
 
 	/* Remove the key/value pair */
 	if (value == null) {
@@ -4345,53 +4532,65 @@ public boolean sleep () {
 public void timerExec (int milliseconds, Runnable runnable) {
 	checkDevice ();
 	if (runnable == null) error (SWT.ERROR_NULL_ARGUMENT);
-	if (timerList == null) timerList = new Runnable [4];
-	if (timerIds == null) timerIds = new int [4];	
-	int index = 0;
-	while (index < timerList.length) {
-		if (timerList [index] == runnable) break;
-		index++;
-	}
-	if (index != timerList.length) {
-		OS.g_source_remove (timerIds [index]);
-		timerList [index] = null;
-		timerIds [index] = 0;
-		if (milliseconds < 0) return;
-	} else {
-		if (milliseconds < 0) return;
-		index = 0;
-		while (index < timerList.length) {
-			if (timerList [index] == null) break;
-			index++;
-		}
-		if (index == timerList.length) {
-			Runnable [] newTimerList = new Runnable [timerList.length + 4];
-			System.arraycopy (timerList, 0, newTimerList, 0, timerList.length);
-			timerList = newTimerList;
-			int [] newTimerIds = new int [timerIds.length + 4];
-			System.arraycopy (timerIds, 0, newTimerIds, 0, timerIds.length);
-			timerIds = newTimerIds;
-		}
-	}
-	int timerId = OS.g_timeout_add (milliseconds, timerProc, index);
-	if (timerId != 0) {
-		timerIds [index] = timerId;
-		timerList [index] = runnable;
+	/*
+	* The timers are kept in a timing wheel, which adds and removes
+	* them in constant time, and a single GLib timeout source is set
+	* to the earliest deadline. The source is not moved when a timer
+	* is removed, as waking up early does no harm.
+	*/
+	long time = timerTime ();
+	if (timers == null) timers = new TimerWheel (time);
+	if (milliseconds < 0) {
+		timers.remove (runnable);
+		return;
 	}
+	timers.add (runnable, time + milliseconds);
+	updateTimer (time);
 }
 
 long /*int*/ timerProc (long /*int*/ i) {
-	if (timerList == null) return 0;
-	int index = (int)/*64*/i;
-	if (0 <= index && index < timerList.length) {
-		Runnable runnable = timerList [index];
-		timerList [index] = null;
-		timerIds [index] = 0;
-		if (runnable != null) runnable.run ();
+	if (timers == null) return 0;
+	/* Returning 0 removes the source */
+	timerId = 0;
+	timers.advance (timerTime ());
+	/*
+	* The source is set for the other timers before each runnable
+	* runs, so that they do not wait for the next timerExec() when
+	* it throws or runs a nested event loop.
+	*/
+	Runnable runnable;
+	while ((runnable = timers.poll ()) != null) {
+		updateTimer (timerTime ());
+		runnable.run ();
+		if (timers == null) return 0;
 	}
+	updateTimer (timerTime ());
 	return 0;
 }
 
+long timerTime () {
+	return Compatibility.currentTime ();
+}
+
+void updateTimer (long time) {
+	long deadline = timers.nextDeadline ();
+	if (deadline == -1) return;
+	/*
+	* Round the deadline up to a multiple of the tolerance, so that
+	* timers due within the same interval run on the same wake up.
+	*/
+	if (timerTolerance > 1) {
+		deadline = (deadline + timerTolerance - 1) / timerTolerance * timerTolerance;
+	}
+	if (timerId != 0) {
+		if (timerDeadline <= deadline) return;
+		OS.g_source_remove (timerId);
+		timerId = 0;
+	}
+	timerId = OS.g_timeout_add ((int) Math.max (0, deadline - time), timerProc, 0);
+	timerDeadline = deadline;
+}
+
 long /*int*/ caretProc (long /*int*/ clientData) {
 	caretId = 0;
 	if (currentCaret == null) {
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.widgets;
+
+
+/**
+ * Instances of this class keep the runnables given to
+ * <code>Display.timerExec()</code> in a hashed timing wheel.
+ * <p>
+ * Each timer is kept in the slot of its deadline, in milliseconds,
+ * modulo the number of slots, and the timers are also hashed by the
+ * identity of their runnable. Adding, finding and removing a timer
+ * therefore takes constant time, however many timers there are. The
+ * wheel advances when the display runs the timers that are due.
+ * </p>
+ */
+class TimerWheel {
+	Timer [] slots = new Timer [SLOTS];
+	Timer [] table = new Timer [16];
+	Timer due;
+	int count, serial;
+	long tick;
+	static final int SLOTS = 512;
+	static final int DUE = -1;
+
+	static final class Timer {
+		Runnable runnable;
+		long deadline;
+		int slot, serial;
+		Timer previous, next, link;
+	}
+
+TimerWheel (long time) {
+	tick = time;
+}
+
+/*
+* Adds the runnable, replacing its current timer if it has one.
+* The deadlines are always after the current tick, so that the
+* timer is found when the wheel next advances.
+*/
+void add (Runnable runnable, long deadline) {
+	remove (runnable);
+	Timer timer = new Timer ();
+	timer.runnable = runnable;
+	timer.deadline = Math.max (deadline, tick + 1);
+	timer.serial = serial++;
+	if ((count + 1) * 4 > table.length * 3) rehash (table.length * 2);
+	int index = hash (runnable, table.length);
+	timer.link = table [index];
+	table [index] = timer;
+	count++;
+	insert (timer, (int) (timer.deadline & (SLOTS - 1)));
+}
+
+/*
+* Moves the timers which are due at the given time to the list
+* of due timers, sorted by deadline and in the order in which
+* they were added.
+*/
+void advance (long time) {
+	if (time <= tick) return;
+	int length = (int) Math.min (time - tick, SLOTS);
+	for (int i=1; i<=length; i++) {
+		int slot = (int) ((tick + i) & (SLOTS - 1));
+		Timer timer = slots [slot];
+		while (timer != null) {
+			Timer next = timer.next;
+			if (timer.deadline <= time) {
+				unlink (timer);
+				insert (timer, DUE);
+			}
+			timer = next;
+		}
+	}
+	tick = time;
+}
+
+int hash (Runnable runnable, int length) {
+	return System.identityHashCode (runnable) & (length - 1);
+}
+
+void insert (Timer timer, int slot) {
+	timer.slot = slot;
+	if (slot == DUE) {
+		Timer previous = null, next = due;
+		while (next != null && (next.deadline < timer.deadline || (next.deadline == timer.deadline && next.serial < timer.serial))) {
+			previous = next;
+			next = next.next;
+		}
+		timer.previous = previous;
+		timer.next = next;
+		if (previous != null) {
+			previous.next = timer;
+		} else {
+			due = timer;
+		}
+		if (next != null) next.previous = timer;
+	} else {
+		timer.previous = null;
+		timer.next = slots [slot];
+		if (timer.next != null) timer.next.previous = timer;
+		slots [slot] = timer;
+	}
+}
+
+/*
+* Answers the earliest deadline, or -1 if there are no timers.
+* The slots of the next turn of the wheel are looked at in order,
+* so that the search stops at the first timer due in that turn.
+*/
+long nextDeadline () {
+	if (due != null) return due.deadline;
+	if (count == 0) return -1;
+	long deadline = -1;
+	for (int i=1; i<=SLOTS; i++) {
+		Timer timer = slots [(int) ((tick + i) & (SLOTS - 1))];
+		while (timer != null) {
+			if (timer.deadline == tick + i) return timer.deadline;
+			if (deadline == -1 || timer.deadline < deadline) deadline = timer.deadline;
+			timer = timer.next;
+		}
+	}
+	return deadline;
+}
+
+/*
+* Removes and answers the first timer which is due, or null.
+*/
+Runnable poll () {
+	Timer timer = due;
+	if (timer == null) return null;
+	remove (timer.runnable);
+	return timer.runnable;
+}
+
+void rehash (int length) {
+	Timer [] newTable = new Timer [length];
+	for (int i=0; i<table.length; i++) {
+		Timer timer = table [i];
+		while (timer != null) {
+			Timer link = timer.link;
+			int index = hash (timer.runnable, length);
+			timer.link = newTable [index];
+			newTable [index] = timer;
+			timer = link;
+		}
+	}
+	table = newTable;
+}
+
+/*
+* Removes the timer of the runnable, answering whether it had one.
+*/
+boolean remove (Runnable runnable) {
+	int index = hash (runnable, table.length);
+	Timer previous = null, timer = table [index];
+	while (timer != null && timer.runnable != runnable) {
+		previous = timer;
+		timer = timer.link;
+	}
+	if (timer == null) return false;
+	if (previous != null) {
+		previous.link = timer.link;
+	} else {
+		table [index] = timer.link;
+	}
+	timer.link = null;
+	count--;
+	unlink (timer);
+	return true;
+}
+
+void unlink (Timer timer) {
+	if (timer.previous != null) {
+		timer.previous.next = timer.next;
+	} else if (timer.slot == DUE) {
+		due = timer.next;
+	} else {
+		slots [timer.slot] = timer.next;
+	}
+	if (timer.next != null) timer.next.previous = timer.previous;
+	timer.previous = timer.next = null;
+}
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2014 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -102,6 +102,9 @@ public abstract class Widget {
 	/* Should sub-windows be checked when EnterNotify received */
 	static final int CHECK_SUBWINDOW = 1<<25;
 
+	/* Should queued MouseMove and Paint events be merged */
+	static final int COALESCE_EVENTS = 1<<26;
+
 	/* Default size for widgets */
 	static final int DEFAULT_WIDTH	= 64;
 	static final int DEFAULT_HEIGHT	= 64;
@@ -195,6 +198,7 @@ public abstract class Widget {
 	
 	static final String IS_ACTIVE = "org.eclipse.swt.internal.control.isactive"; //$NON-NLS-1$
 	static final String KEY_CHECK_SUBWINDOW = "org.eclipse.swt.internal.control.checksubwindow"; //$NON-NLS-1$
+	static final String KEY_COALESCE_EVENTS = "org.eclipse.swt.internal.gtk.coalesceEvents"; //$NON-NLS-1$
 
 /**
  * Prevents uninitialized instances from being created outside the package.
@@ -532,12 +536,12 @@ public Object getData (String key) {
 	if (key.equals (KEY_CHECK_SUBWINDOW)) {
 		return new Boolean ((state & CHECK_SUBWINDOW) != 0);
 	}
+	if (key.equals (KEY_COALESCE_EVENTS)) {
+		return new Boolean ((state & COALESCE_EVENTS) != 0);
+	}
 	if (key.equals(IS_ACTIVE)) return new Boolean(isActive ());
 	if ((state & KEYED_DATA) != 0) {
-		Object [] table = (Object []) data;
-		for (int i=1; i<table.length; i+=2) {
-			if (key.equals (table [i])) return table [i+1];
-		}
+		return KeyedData.get ((Object []) data, key);
 	}
 	return null;
 }
@@ -1418,11 +1422,16 @@ void sendEvent (int eventType, Event event, boolean send) {
 boolean sendKeyEvent (int type, GdkEventKey keyEvent) {
 	int length = keyEvent.length;
 	if (keyEvent.string == 0 || OS.g_utf16_strlen (keyEvent.string, length) <= 1) {
-		Event event = new Event ();
+		Event event = display.newEvent ();
 		event.time = keyEvent.time;
-		if (!setKeyState (event, keyEvent)) return true;
+		if (!setKeyState (event, keyEvent)) {
+			display.releaseEvent (event);
+			return true;
+		}
 		sendEvent (type, event);
 		// widget could be disposed at this point
+		boolean doit = event.doit;
+		display.releaseEvent (event);
 	
 		/*
 		* It is possible (but unlikely), that application
@@ -1431,7 +1440,7 @@ boolean sendKeyEvent (int type, GdkEventKey keyEvent) {
 		* the key by returning false.
 		*/
 		if (isDisposed ()) return false;
-		return event.doit;
+		return doit;
 	}
 	byte [] buffer = new byte [length];
 	OS.memmove (buffer, keyEvent.string, length);
@@ -1595,45 +1604,29 @@ public void setData (String key, Object value) {
 		}
 		return;
 	}
-
-	int index = 1;
-	Object [] table = null;
-	if ((state & KEYED_DATA) != 0) {
-		table = (Object []) data;
-		while (index < table.length) {
-			if (key.equals (table [index])) break;
-			index += 2;
+	if (key.equals (KEY_COALESCE_EVENTS)) {
+		if (value != null && value instanceof Boolean) {
+			if (((Boolean)value).booleanValue ()) {
+				state |= COALESCE_EVENTS;
+			} else {
+				state &= ~COALESCE_EVENTS;
+			}
 		}
+		return;
 	}
-	if (value != null) {
-		if ((state & KEYED_DATA) != 0) {
-			if (index == table.length) {
-				Object [] newTable = new Object [table.length + 2];
-				System.arraycopy (table, 0, newTable, 0, table.length);
-				data = table = newTable;
-			}
+
+	if ((state & KEYED_DATA) != 0) {
+		Object [] table = KeyedData.put ((Object []) data, key, value);
+		if (table.length == 1) {
+			data = table [0];
+			state &= ~KEYED_DATA;
 		} else {
-			table = new Object [3];
-			table [0] = data;
 			data = table;
-			state |= KEYED_DATA;
 		}
-		table [index] = key;
-		table [index + 1] = value;
 	} else {
-		if ((state & KEYED_DATA) != 0) {
-			if (index != table.length) {
-				int length = table.length - 2;
-				if (length == 1) {
-					data = table [0];
-					state &= ~KEYED_DATA;
-				} else {
-					Object [] newTable = new Object [length];
-					System.arraycopy (table, 0, newTable, 0, index);
-					System.arraycopy (table, index + 2, newTable, index, length - index);
-					data = newTable;
-				}
-			}
+		if (value != null) {
+			data = KeyedData.put (new Object [] {data}, key, value);
+			state |= KEYED_DATA;
 		}
 	}
 	if (key.equals(SWT.SKIN_CLASS) || key.equals(SWT.SKIN_ID)) this.reskin(SWT.ALL);
@@ -30,6 +30,7 @@ import org.junit.runners.Suite;
 		Test_org_eclipse_swt_graphics_GC.class,
 		Test_org_eclipse_swt_graphics_Image.class,
 		Test_org_eclipse_swt_graphics_ImageData.class,
+		Test_org_eclipse_swt_graphics_ImageDataCache.class,
 		Test_org_eclipse_swt_graphics_PaletteData.class,
 		Test_org_eclipse_swt_graphics_Point.class,
 		Test_org_eclipse_swt_graphics_Rectangle.class,
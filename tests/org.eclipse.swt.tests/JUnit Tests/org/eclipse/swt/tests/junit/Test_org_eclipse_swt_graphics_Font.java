@@ -224,6 +224,18 @@ public void test_dispose() {
 	assertFalse(font.isDisposed());
 	font.dispose();
 	assertTrue(font.isDisposed());
+
+	/* Disposing a font does not dispose an equal font */
+	FontData data = new FontData(SwtTestUtil.testFontName, 10, SWT.BOLD);
+	font = new Font(display, data);
+	Font otherFont = new Font(display, data);
+	font.dispose();
+	assertFalse(otherFont.isDisposed());
+	assertEquals(SWT.BOLD, otherFont.getFontData()[0].getStyle() & SWT.BOLD);
+	font = new Font(display, data);
+	otherFont.dispose();
+	assertEquals(SWT.BOLD, font.getFontData()[0].getStyle() & SWT.BOLD);
+	font.dispose();
 }
 
 public void test_equalsLjava_lang_Object() {
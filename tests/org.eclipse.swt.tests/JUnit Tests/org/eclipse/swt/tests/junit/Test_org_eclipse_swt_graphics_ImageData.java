@@ -775,6 +775,62 @@ public void test_scaledToII() {
 	assertArrayEquals(":d:", expectedPixelData, scaledPixelData);
 }
 
+public void test_scaledToIII() {
+	int[] filters = {SWT.FILTER_BOX, SWT.FILTER_BILINEAR, SWT.FILTER_BICUBIC, SWT.FILTER_LANCZOS};
+	ImageData flat = new ImageData(16, 12, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int y = 0; y < flat.height; y++) {
+		for (int x = 0; x < flat.width; x++) {
+			flat.setPixel(x, y, 0x336699);
+		}
+	}
+	for (int i = 0; i < filters.length; i++) {
+		int[][] sizes = {{5, 7}, {40, 30}, {-16, -12}};
+		for (int j = 0; j < sizes.length; j++) {
+			ImageData scaled = flat.scaledTo(sizes[j][0], sizes[j][1], filters[i]);
+			assertEquals(":a:", Math.abs(sizes[j][0]), scaled.width);
+			assertEquals(":b:", Math.abs(sizes[j][1]), scaled.height);
+			for (int y = 0; y < scaled.height; y++) {
+				for (int x = 0; x < scaled.width; x++) {
+					assertEquals(":c:", new RGB(0x33, 0x66, 0x99), scaled.palette.getRGB(scaled.getPixel(x, y)));
+				}
+			}
+		}
+	}
+
+	// box filtering averages, negative sizes flip
+	ImageData stripes = new ImageData(4, 1, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	stripes.setPixel(0, 0, 0x000000);
+	stripes.setPixel(1, 0, 0x0000FF);
+	stripes.setPixel(2, 0, 0xFF0000);
+	stripes.setPixel(3, 0, 0xFF0000);
+	ImageData scaled = stripes.scaledTo(-2, 1, SWT.FILTER_BOX);
+	assertEquals(":d:", new RGB(0xFF, 0, 0), scaled.palette.getRGB(scaled.getPixel(0, 0)));
+	assertEquals(":e:", new RGB(0, 0, 0x80), scaled.palette.getRGB(scaled.getPixel(1, 0)));
+
+	// alpha is resampled
+	stripes.alphaData = new byte[] {0, 0, (byte)0xFF, (byte)0xFF};
+	scaled = stripes.scaledTo(2, 1, SWT.FILTER_BOX);
+	assertEquals(":f:", 0, scaled.getAlpha(0, 0));
+	assertEquals(":g:", 0xFF, scaled.getAlpha(1, 0));
+
+	// SWT.NONE is the same as scaledTo(int, int)
+	scaled = stripes.scaledTo(8, 2, SWT.NONE);
+	assertArrayEquals(":h:", stripes.scaledTo(8, 2).data, scaled.data);
+
+	try {
+		flat.scaledTo(0, 10, SWT.FILTER_BILINEAR);
+		fail("No exception thrown for zero width");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for zero width", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+	try {
+		flat.scaledTo(10, 10, 99);
+		fail("No exception thrown for invalid filter");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for invalid filter", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
 public void test_setAlphaIII() {
 	int value;
 	
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageDataCache;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Automated Test Suite for class org.eclipse.swt.graphics.ImageDataCache
+ *
+ * @see org.eclipse.swt.graphics.ImageDataCache
+ */
+public class Test_org_eclipse_swt_graphics_ImageDataCache extends TestCase {
+
+File[] files;
+
+@Override
+protected void setUp() throws Exception {
+	super.setUp();
+	files = new File[2];
+	for (int i = 0; i < files.length; i++) {
+		files[i] = File.createTempFile("swt_cache", ".png");
+		writeImage(files[i], i);
+	}
+}
+
+@Override
+protected void tearDown() throws Exception {
+	ImageDataCache.setDefault(null);
+	for (int i = 0; i < files.length; i++) {
+		files[i].delete();
+	}
+	super.tearDown();
+}
+
+public void test_ConstructorIZ() {
+	try {
+		new ImageDataCache(-1, false);
+		fail("No exception thrown for byteLimit < 0");
+	} catch (IllegalArgumentException e) {
+	}
+	ImageDataCache cache = new ImageDataCache(1000, true);
+	assertEquals(1000, cache.getByteLimit());
+	assertEquals(0, cache.getByteCount());
+}
+
+public void test_setByteLimitI() {
+	ImageDataCache cache = new ImageDataCache(1 << 20, false);
+	ImageDataCache.setDefault(cache);
+	new ImageLoader().load(files[0].getPath());
+	new ImageLoader().load(files[1].getPath());
+	int size = cache.getByteCount();
+	assertTrue(size > 0);
+	cache.setByteLimit(size - 1);
+	assertEquals(1, cache.getEvictionCount());
+	assertEquals(size / 2, cache.getByteCount());
+
+	/* The most recently used file is kept */
+	new ImageLoader().load(files[1].getPath());
+	assertEquals(1, cache.getHitCount());
+	new ImageLoader().load(files[0].getPath());
+	assertEquals(3, cache.getMissCount());
+	assertEquals(2, cache.getEvictionCount());
+
+	try {
+		cache.setByteLimit(-1);
+		fail("No exception thrown for byteLimit < 0");
+	} catch (IllegalArgumentException e) {
+	}
+	cache.clear();
+	assertEquals(0, cache.getByteCount());
+}
+
+public void test_setDefaultLorg_eclipse_swt_graphics_ImageDataCache() throws IOException {
+	ImageDataCache cache = new ImageDataCache(1 << 20, false);
+	ImageDataCache.setDefault(cache);
+	assertSame(cache, ImageDataCache.getDefault());
+
+	String filename = files[0].getPath();
+	ImageData first = new ImageLoader().load(filename)[0];
+	assertEquals(0, cache.getHitCount());
+	assertEquals(1, cache.getMissCount());
+	ImageData second = new ImageLoader().load(filename)[0];
+	assertEquals(1, cache.getHitCount());
+	assertNotSame(first, second);
+	assertNotSame(first.data, second.data);
+	assertEquals(0, second.getPixel(0, 0));
+
+	/* Changing the cached copy does not change the next load */
+	second.setPixel(0, 0, 1);
+	assertEquals(0, new ImageData(filename).getPixel(0, 0));
+	assertEquals(2, cache.getHitCount());
+
+	/* A modified file is decoded again */
+	long lastModified = files[0].lastModified();
+	writeImage(files[0], 1);
+	files[0].setLastModified(lastModified + 10000);
+	assertEquals(1, new ImageLoader().load(filename)[0].getPixel(0, 0));
+	assertEquals(2, cache.getHitCount());
+	assertEquals(2, cache.getMissCount());
+
+	/* A different scale denominator is a different entry */
+	ImageLoader loader = new ImageLoader();
+	loader.scaleDenominator = 2;
+	loader.load(filename);
+	assertEquals(3, cache.getMissCount());
+
+	ImageDataCache.setDefault(null);
+	new ImageLoader().load(filename);
+	assertEquals(3, cache.getMissCount());
+	assertEquals(2, cache.getHitCount());
+}
+
+void writeImage(File file, int pixel) {
+	ImageData image = new ImageData(32, 32, 8, new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 255, 255)}));
+	for (int y = 0; y < image.height; y++) {
+		for (int x = 0; x < image.width; x++) {
+			image.setPixel(x, y, pixel);
+		}
+	}
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {image};
+	loader.save(file.getPath(), SWT.IMAGE_PNG);
+}
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,16 +11,25 @@
 package org.eclipse.swt.tests.junit;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Vector;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import junit.framework.TestCase;
 
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageInfo;
 import org.eclipse.swt.graphics.ImageLoader;
 import org.eclipse.swt.graphics.ImageLoaderEvent;
 import org.eclipse.swt.graphics.ImageLoaderListener;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
 
 /**
  * Automated Test Suite for class org.eclipse.swt.graphics.ImageLoader
@@ -113,6 +122,151 @@ public void test_loadLjava_io_InputStream() {
 	}
 }
 
+public void test_loadLjava_io_InputStream_fileFormat() {
+	ImageData source = new ImageData(16, 12, 8, new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 255, 255)}));
+	source.setPixel(3, 4, 1);
+	int[] formats = {SWT.IMAGE_BMP, SWT.IMAGE_GIF, SWT.IMAGE_ICO, SWT.IMAGE_JPEG, SWT.IMAGE_PNG, SWT.IMAGE_TIFF};
+	for (int i = 0; i < formats.length; i++) {
+		ImageLoader loader = new ImageLoader();
+		byte[] bytes;
+		if (formats[i] == SWT.IMAGE_TIFF) {
+			bytes = createTIFF(16, 12, new int[] {5}, new int[] {1}, new byte[][] {encodeLZW(new byte[16 * 12])});
+		} else {
+			loader.data = new ImageData[] {source};
+			ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+			loader.save(outStream, formats[i]);
+			bytes = outStream.toByteArray();
+		}
+
+		/* The format is recognized, whichever format is tried first */
+		for (int j = -1; j <= SWT.IMAGE_OS2_BMP; j++) {
+			loader = new ImageLoader();
+			loader.internal_setFileFormat(j);
+			ImageData[] images = loader.load(new ByteArrayInputStream(bytes));
+			assertEquals(formats[i], loader.internal_getFileFormat());
+			assertEquals(16, images[0].width);
+			assertEquals(12, images[0].height);
+
+			loader = new ImageLoader();
+			loader.internal_setFileFormat(j);
+			ImageInfo info = loader.probe(new ByteArrayInputStream(bytes));
+			assertEquals(formats[i], info.type);
+		}
+	}
+
+	ImageLoader loader = new ImageLoader();
+	loader.internal_setFileFormat(SWT.IMAGE_PNG);
+	try {
+		loader.load(new ByteArrayInputStream(new byte[] {'n', 'o', 't', ' ', 'a', 'n', ' ', 'i', 'm', 'a', 'g', 'e'}));
+		fail("No exception thrown for load from a stream in no format");
+	} catch (SWTException e) {
+		assertEquals(SWT.ERROR_UNSUPPORTED_FORMAT, e.code);
+	}
+}
+
+public void test_loadLjava_io_InputStream_scaleDenominator() {
+	InputStream stream = SwtTestUtil.class.getResourceAsStream("target.png");
+	ImageData source = new ImageLoader().load(stream)[0].scaledTo(100, 70);
+	try {
+		stream.close();
+	} catch (IOException e) {}
+
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {source};
+	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+	loader.save(outStream, SWT.IMAGE_JPEG);
+	byte[] bytes = outStream.toByteArray();
+
+	int[] denominators = {1, 2, 3, 4, 8, 16};
+	int[] widths = {100, 50, 50, 25, 13, 13};
+	int[] heights = {70, 35, 35, 18, 9, 9};
+	for (int i = 0; i < denominators.length; i++) {
+		loader = new ImageLoader();
+		loader.scaleDenominator = denominators[i];
+		ImageData scaled = loader.load(new ByteArrayInputStream(bytes))[0];
+		assertEquals(widths[i], scaled.width);
+		assertEquals(heights[i], scaled.height);
+		assertEquals(denominators[i], loader.scaleDenominator);
+	}
+}
+
+public void test_loadLjava_io_InputStream_tiffCompression() {
+	int width = 20, height = 10;
+	byte[] pixels = new byte[width * height];
+	for (int i = 0; i < pixels.length; i++) {
+		pixels[i] = (byte)((i % width) * 12 + (i / width) * 5);
+	}
+	/* Horizontal differencing, as written with predictor 2 */
+	byte[] differences = new byte[pixels.length];
+	for (int i = 0; i < pixels.length; i++) {
+		differences[i] = (byte)(i % width == 0 ? pixels[i] : pixels[i] - pixels[i - 1]);
+	}
+	Deflater deflater = new Deflater();
+	deflater.setInput(differences);
+	deflater.finish();
+	byte[] buffer = new byte[1024];
+	byte[] deflated = new byte[deflater.deflate(buffer)];
+	System.arraycopy(buffer, 0, deflated, 0, deflated.length);
+
+	byte[] bytes = createTIFF(width, height, new int[] {8, 5}, new int[] {2, 1}, new byte[][] {deflated, encodeLZW(pixels)});
+	ImageData[] images = new ImageLoader().load(new ByteArrayInputStream(bytes));
+	assertEquals(2, images.length);
+	for (int i = 0; i < images.length; i++) {
+		assertEquals(width, images[i].width);
+		assertEquals(height, images[i].height);
+		assertEquals(8, images[i].depth);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				assertEquals(pixels[y * width + x] & 0xFF, images[i].getPixel(x, y));
+			}
+		}
+	}
+}
+
+public void test_loadLjava_io_InputStreamI() {
+	ImageLoader loader = new ImageLoader();
+	try {
+		loader.load(null, 0);
+		fail("No exception thrown for load inputStream == null");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		loader.load(new ByteArrayInputStream(new byte[0]), -1);
+		fail("No exception thrown for load index < 0");
+	} catch (IllegalArgumentException e) {
+	}
+
+	int width = 16, height = 12;
+	byte[][] strips = new byte[3][];
+	for (int i = 0; i < strips.length; i++) {
+		byte[] pixels = new byte[width * height];
+		for (int j = 0; j < pixels.length; j++) {
+			pixels[j] = (byte)(i * 40 + j);
+		}
+		strips[i] = encodeLZW(pixels);
+	}
+	byte[] bytes = createTIFF(width, height, new int[] {5, 5, 5}, new int[] {1, 1, 1}, strips);
+
+	/* Only the requested page is decoded */
+	final ImageData[] decoded = new ImageData[4];
+	final int[] count = new int[1];
+	loader.addImageLoaderListener(new ImageLoaderListener() {
+		public void imageDataLoaded(ImageLoaderEvent e) {
+			decoded[count[0]++] = e.imageData;
+		}
+	});
+	ImageData image = loader.load(new ByteArrayInputStream(bytes), 2);
+	assertNotNull(image);
+	assertEquals(1, count[0]);
+	assertSame(image, decoded[0]);
+	assertEquals(1, loader.data.length);
+	assertSame(image, loader.data[0]);
+	for (int j = 0; j < width * height; j++) {
+		assertEquals((80 + j) & 0xFF, image.getPixel(j % width, j / width));
+	}
+	assertNull(loader.load(new ByteArrayInputStream(bytes), 3));
+}
+
 public void test_loadLjava_lang_String() {
 	ImageLoader loader = new ImageLoader();
 	String filename = null;
@@ -124,6 +278,226 @@ public void test_loadLjava_lang_String() {
 	// j2se and j2me(cdc) can load from a filename but, j2me(cldc) throws an exception
 }
 
+public void test_openLjava_io_InputStreamI() {
+	ImageLoader loader = new ImageLoader();
+	try {
+		loader.open(null, 0);
+		fail("No exception thrown for open stream == null");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		loader.open(new ByteArrayInputStream(new byte[0]), -1);
+		fail("No exception thrown for open lookAhead < 0");
+	} catch (IllegalArgumentException e) {
+	}
+	assertNull(loader.loadNext());
+
+	int frameCount = 6;
+	ImageData[] frames = new ImageData[frameCount];
+	for (int i = 0; i < frameCount; i++) {
+		frames[i] = new ImageData(16, 12, 8, new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 255, 255)}));
+		frames[i].setPixel(i, i, 1);
+		frames[i].delayTime = i * 10;
+	}
+	loader.data = frames;
+	loader.logicalScreenWidth = 16;
+	loader.logicalScreenHeight = 12;
+	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+	loader.save(outStream, SWT.IMAGE_GIF);
+	byte[] bytes = outStream.toByteArray();
+
+	int[] lookAheads = {0, 1, 3};
+	for (int i = 0; i < lookAheads.length; i++) {
+		loader = new ImageLoader();
+		loader.open(new ByteArrayInputStream(bytes), lookAheads[i]);
+		assertEquals(16, loader.logicalScreenWidth);
+		assertEquals(12, loader.logicalScreenHeight);
+		assertNull(loader.data);
+		for (int j = 0; j < frameCount; j++) {
+			ImageData frame = loader.loadNext();
+			assertNotNull(frame);
+			assertEquals(j * 10, frame.delayTime);
+			assertEquals(1, frame.getPixel(j, j));
+			assertEquals(0, frame.getPixel(j + 1, j));
+		}
+		assertNull(loader.loadNext());
+		assertNull(loader.loadNext());
+	}
+
+	loader = new ImageLoader();
+	loader.open(new ByteArrayInputStream(bytes), 2);
+	assertNotNull(loader.loadNext());
+	loader.close();
+	assertNull(loader.loadNext());
+
+	/* The decoding thread has stopped when close() returns */
+	final int[] reads = new int[1];
+	InputStream stream = new ByteArrayInputStream(bytes) {
+		public synchronized int read() {
+			reads[0]++;
+			return super.read();
+		}
+		public synchronized int read(byte[] b, int off, int len) {
+			reads[0]++;
+			return super.read(b, off, len);
+		}
+	};
+	loader = new ImageLoader();
+	loader.open(stream, 1);
+	loader.close();
+	int count = reads[0];
+	Thread[] threads = new Thread[Thread.activeCount() + 8];
+	int threadCount = Thread.enumerate(threads);
+	for (int i = 0; i < threadCount; i++) {
+		assertFalse("decoding thread is alive after close", "SWT Image Decoder".equals(threads[i].getName()));
+	}
+	assertEquals(count, reads[0]);
+}
+
+public void test_openLjava_io_InputStreamI_png() {
+	final int width = 13, height = 40;
+	/* The color type, bit depth and number of samples of each image */
+	int[][] types = {{2, 8, 3}, {6, 16, 4}, {3, 8, 1}, {4, 8, 2}, {0, 16, 1}};
+	byte[] palette = new byte[256 * 3];
+	byte[] transparency = new byte[200];
+	for (int i = 0; i < 256; i++) {
+		palette[i * 3] = (byte)i;
+		palette[i * 3 + 1] = (byte)(255 - i);
+		palette[i * 3 + 2] = (byte)(i * 3);
+		if (i < transparency.length) transparency[i] = (byte)(i + 50);
+	}
+	for (int t = 0; t < types.length; t++) {
+		int colorType = types[t][0], bitDepth = types[t][1], samples = types[t][2];
+		int sampleSize = bitDepth / 8;
+		byte[][] rows = new byte[height][width * samples * sampleSize];
+		final RGB[][] rgbs = new RGB[height][width];
+		final int[][] alphas = new int[height][width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int[] values = new int[samples];
+				for (int c = 0; c < samples; c++) {
+					values[c] = (x * 7 + y * 13 + c * 29 + t * 5) & 0xFF;
+					int index = (x * samples + c) * sampleSize;
+					rows[y][index] = (byte)values[c];
+					if (sampleSize == 2) rows[y][index + 1] = (byte)(values[c] * 3);
+				}
+				switch (colorType) {
+					case 0: rgbs[y][x] = new RGB(values[0], values[0], values[0]); alphas[y][x] = 255; break;
+					case 2: rgbs[y][x] = new RGB(values[0], values[1], values[2]); alphas[y][x] = 255; break;
+					case 3:
+						int i = values[0];
+						rgbs[y][x] = new RGB(i, 255 - i, (i * 3) & 0xFF);
+						alphas[y][x] = i < transparency.length ? (i + 50) & 0xFF : 255;
+						break;
+					case 4: rgbs[y][x] = new RGB(values[0], values[0], values[0]); alphas[y][x] = values[1]; break;
+					case 6: rgbs[y][x] = new RGB(values[0], values[1], values[2]); alphas[y][x] = values[3]; break;
+				}
+			}
+		}
+		byte[] pngPalette = colorType == 3 ? palette : null;
+		byte[] pngTransparency = colorType == 3 ? transparency : null;
+		for (int interlaced = 0; interlaced < 2; interlaced++) {
+			String name = "type " + colorType + ", depth " + bitDepth + (interlaced == 1 ? ", interlaced" : "");
+			byte[] bytes = createPNG(width, height, bitDepth, colorType, pngPalette, pngTransparency, rows, interlaced == 1);
+			final Vector events = new Vector();
+			ImageLoader loader = new ImageLoader();
+			loader.addImageLoaderListener(new ImageLoaderListener() {
+				public void imageDataLoaded(ImageLoaderEvent e) {
+					/* The rows are checked when they are reported, as the listeners would paint them */
+					if (e.imageData.height < height) assertRows(e.imageData, rgbs, alphas, "row event " + events.size());
+					events.addElement(e);
+				}
+			});
+			ImageData image = loader.load(new ByteArrayInputStream(bytes))[0];
+			assertEquals(name, width, image.width);
+			assertEquals(name, height, image.height);
+			assertRows(image, rgbs, alphas, name);
+			/* Only interlaced images are reported while load() decodes them */
+			assertEquals(name, interlaced == 1 ? 7 : 0, events.size());
+
+			events.removeAllElements();
+			loader.open(new ByteArrayInputStream(bytes), 0);
+			image = loader.loadNext();
+			assertNull(name, loader.loadNext());
+			assertRows(image, rgbs, alphas, name);
+			ImageLoaderEvent last = (ImageLoaderEvent)events.lastElement();
+			assertTrue(name, last.endOfImage);
+			if (interlaced == 0) {
+				assertEquals(name, 3, events.size());
+				assertEquals(name, 16, ((ImageLoaderEvent)events.elementAt(0)).imageData.height);
+				assertEquals(name, 32, ((ImageLoaderEvent)events.elementAt(1)).imageData.height);
+				assertRows(last.imageData, rgbs, alphas, name);
+			} else {
+				assertEquals(name, 7, events.size());
+			}
+		}
+	}
+}
+
+public void test_probeLjava_io_InputStream() {
+	ImageLoader loader = new ImageLoader();
+	try {
+		loader.probe((InputStream)null);
+		fail("No exception thrown for probe inputStream == null");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		loader.probe(new ByteArrayInputStream(new byte[0]));
+		fail("No exception thrown for probe from invalid inputStream");
+	} catch (SWTException e) {
+	}
+
+	int[] types = {SWT.IMAGE_BMP, SWT.IMAGE_JPEG, SWT.IMAGE_GIF, SWT.IMAGE_PNG};
+	for (int i = 0; i < SwtTestUtil.imageFilenames.length; i++) {
+		for (int j = 0; j < SwtTestUtil.imageFormats.length; j++) {
+			String fileName = SwtTestUtil.imageFilenames[i] + "." + SwtTestUtil.imageFormats[j];
+			InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName);
+			ImageInfo info = loader.probe(stream);
+			try {
+				stream.close();
+			} catch (IOException e) {}
+			stream = SwtTestUtil.class.getResourceAsStream(fileName);
+			ImageData[] images = loader.load(stream);
+			try {
+				stream.close();
+			} catch (IOException e) {}
+			assertEquals(fileName, types[j], info.type);
+			assertEquals(fileName, images[0].width, info.width);
+			assertEquals(fileName, images[0].height, info.height);
+			assertEquals(fileName, images[0].depth, info.depth);
+			assertEquals(fileName, images.length, info.imageCount);
+		}
+	}
+
+	int width = 20, height = 10;
+	byte[] pixels = new byte[width * height];
+	byte[] bytes = createTIFF(width, height, new int[] {5, 5, 5}, new int[] {1, 1, 1}, new byte[][] {encodeLZW(pixels), encodeLZW(pixels), encodeLZW(pixels)});
+	ImageInfo info = loader.probe(new ByteArrayInputStream(bytes));
+	assertEquals(SWT.IMAGE_TIFF, info.type);
+	assertEquals(width, info.width);
+	assertEquals(height, info.height);
+	assertEquals(8, info.depth);
+	assertEquals(3, info.imageCount);
+
+	/* The fields of the loader are not modified */
+	loader = new ImageLoader();
+	loader.internal_setFileFormat(SWT.IMAGE_GIF);
+	loader.probe(new ByteArrayInputStream(bytes));
+	assertEquals(SWT.IMAGE_GIF, loader.internal_getFileFormat());
+	assertNull(loader.data);
+	assertEquals(0, loader.logicalScreenWidth);
+	assertEquals(0, loader.logicalScreenHeight);
+}
+
+public void test_probeLjava_lang_String() {
+	ImageLoader loader = new ImageLoader();
+	try {
+		loader.probe((String)null);
+		fail("No exception thrown for probe filename == null");
+	} catch (IllegalArgumentException e) {
+	}
+}
+
 public void test_saveLjava_io_OutputStreamI() {
 	ImageLoader loader = new ImageLoader();
 	ByteArrayOutputStream outStream = null;
@@ -173,6 +547,32 @@ public void test_saveLjava_io_OutputStreamI() {
 	}
 }
 
+public void test_saveLjava_io_OutputStreamI_parallelism() {
+	InputStream stream = SwtTestUtil.class.getResourceAsStream("target.png");
+	ImageData source = new ImageLoader().load(stream)[0].scaledTo(100, 70);
+	try {
+		stream.close();
+	} catch (IOException e) {}
+
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {source};
+	ByteArrayOutputStream serialStream = new ByteArrayOutputStream();
+	loader.save(serialStream, SWT.IMAGE_JPEG);
+	loader.parallelism = 3;
+	ByteArrayOutputStream parallelStream = new ByteArrayOutputStream();
+	loader.save(parallelStream, SWT.IMAGE_JPEG);
+
+	ImageData serial = new ImageLoader().load(new ByteArrayInputStream(serialStream.toByteArray()))[0];
+	ImageData parallel = new ImageLoader().load(new ByteArrayInputStream(parallelStream.toByteArray()))[0];
+	assertEquals(serial.width, parallel.width);
+	assertEquals(serial.height, parallel.height);
+	for (int y = 0; y < serial.height; y++) {
+		for (int x = 0; x < serial.width; x++) {
+			assertEquals(serial.getPixel(x, y), parallel.getPixel(x, y));
+		}
+	}
+}
+
 public void test_saveLjava_lang_StringI() {
 	ImageLoader loader = new ImageLoader();
 	String filename = null;
@@ -186,4 +586,141 @@ public void test_saveLjava_lang_StringI() {
 
 /* custom */
 boolean loaderListenerCalled;
+
+/**
+ * Answer a little endian TIFF file with one 8 bit grayscale page,
+ * stored in a single strip, for each of the given strips.
+ */
+byte[] createTIFF(int width, int height, int[] compressions, int[] predictors, byte[][] strips) {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	int entries = 9;
+	int offset = 8;
+	writeTIFFValue(out, 0x002A4949, 4);
+	writeTIFFValue(out, offset, 4);
+	for (int i = 0; i < strips.length; i++) {
+		int directorySize = 2 + entries * 12 + 4;
+		int stripOffset = offset + directorySize;
+		int nextOffset = i == strips.length - 1 ? 0 : stripOffset + strips[i].length;
+		writeTIFFValue(out, entries, 2);
+		int[][] fields = {
+			{256, 4, width}, {257, 4, height}, {258, 3, 8}, {259, 3, compressions[i]},
+			{262, 3, 1}, {273, 4, stripOffset}, {278, 4, height}, {279, 4, strips[i].length},
+			{317, 3, predictors[i]}};
+		for (int j = 0; j < fields.length; j++) {
+			writeTIFFValue(out, fields[j][0], 2);
+			writeTIFFValue(out, fields[j][1], 2);
+			writeTIFFValue(out, 1, 4);
+			writeTIFFValue(out, fields[j][2], 4);
+		}
+		writeTIFFValue(out, nextOffset, 4);
+		out.write(strips[i], 0, strips[i].length);
+		offset = nextOffset;
+	}
+	return out.toByteArray();
+}
+
+void writeTIFFValue(ByteArrayOutputStream out, int value, int size) {
+	for (int i = 0; i < size; i++) {
+		out.write(value >> (i * 8));
+	}
+}
+
+void assertRows(ImageData image, RGB[][] rgbs, int[][] alphas, String message) {
+	for (int y = 0; y < image.height; y++) {
+		for (int x = 0; x < image.width; x++) {
+			assertEquals(message + " at " + x + ", " + y, rgbs[y][x], image.palette.getRGB(image.getPixel(x, y)));
+			assertEquals(message + " at " + x + ", " + y, alphas[y][x], image.getAlpha(x, y));
+		}
+	}
+}
+
+/**
+ * Answer a PNG file with the given rows, which are unfiltered.
+ * Interlaced files hold the rows of each Adam7 pass instead.
+ */
+byte[] createPNG(int width, int height, int bitDepth, int colorType, byte[] palette, byte[] transparency, byte[][] rows, boolean interlaced) {
+	int bytesPerPixel = rows[0].length / width;
+	ByteArrayOutputStream raw = new ByteArrayOutputStream();
+	int[][] passes = interlaced ? new int[][] {{0, 0, 8, 8}, {4, 0, 8, 8}, {0, 4, 4, 8}, {2, 0, 4, 4}, {0, 2, 2, 4}, {1, 0, 2, 2}, {0, 1, 1, 2}} : new int[][] {{0, 0, 1, 1}};
+	for (int i = 0; i < passes.length; i++) {
+		int startX = passes[i][0], startY = passes[i][1], stepX = passes[i][2], stepY = passes[i][3];
+		if (startX >= width) continue;
+		for (int y = startY; y < height; y += stepY) {
+			raw.write(0);
+			for (int x = startX; x < width; x += stepX) {
+				raw.write(rows[y], x * bytesPerPixel, bytesPerPixel);
+			}
+		}
+	}
+	Deflater deflater = new Deflater();
+	deflater.setInput(raw.toByteArray());
+	deflater.finish();
+	ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+	byte[] buffer = new byte[1024];
+	while (!deflater.finished()) {
+		compressed.write(buffer, 0, deflater.deflate(buffer));
+	}
+
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	out.write(new byte[] {(byte)137, 80, 78, 71, 13, 10, 26, 10}, 0, 8);
+	ByteArrayOutputStream header = new ByteArrayOutputStream();
+	writePNGValue(header, width);
+	writePNGValue(header, height);
+	header.write(bitDepth);
+	header.write(colorType);
+	header.write(0);
+	header.write(0);
+	header.write(interlaced ? 1 : 0);
+	writePNGChunk(out, "IHDR", header.toByteArray());
+	if (palette != null) writePNGChunk(out, "PLTE", palette);
+	if (transparency != null) writePNGChunk(out, "tRNS", transparency);
+	writePNGChunk(out, "IDAT", compressed.toByteArray());
+	writePNGChunk(out, "IEND", new byte[0]);
+	return out.toByteArray();
+}
+
+void writePNGChunk(ByteArrayOutputStream out, String type, byte[] data) {
+	byte[] typeBytes = type.getBytes();
+	CRC32 crc = new CRC32();
+	crc.update(typeBytes);
+	crc.update(data);
+	writePNGValue(out, data.length);
+	out.write(typeBytes, 0, typeBytes.length);
+	out.write(data, 0, data.length);
+	writePNGValue(out, (int)crc.getValue());
+}
+
+void writePNGValue(ByteArrayOutputStream out, int value) {
+	for (int i = 3; i >= 0; i--) {
+		out.write(value >> (i * 8));
+	}
+}
+
+/**
+ * Answer the TIFF LZW encoding of the given bytes, written as single
+ * byte codes only. A clear code is written before the table would
+ * grow past 9 bit codes.
+ */
+byte[] encodeLZW(byte[] data) {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	int bits = 0, bitCount = 0;
+	for (int i = 0; i <= data.length + data.length / 200 + 1; i++) {
+		int code;
+		if (i % 201 == 0) {
+			code = 256;
+		} else {
+			int index = i - i / 201 - 1;
+			code = index < data.length ? data[index] & 0xFF : 257;
+		}
+		bits = (bits << 9) | code;
+		bitCount += 9;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			out.write(bits >> bitCount);
+		}
+		if (code == 257) break;
+	}
+	if (bitCount > 0) out.write(bits << (8 - bitCount));
+	return out.toByteArray();
+}
 }
@@ -16,6 +16,9 @@ import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Caret;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Widget;
 
 /**
@@ -56,6 +59,38 @@ public void test_ConstructorLorg_eclipse_swt_widgets_CompositeI() {
 	}
 }
 
+public void test_redraw_coalesced() {
+	if (!SwtTestUtil.isGTK) return;
+	Display display = canvas.getDisplay();
+	final int[] paints = new int[1];
+	canvas.addListener(SWT.Paint, new Listener() {
+		public void handleEvent(Event e) {
+			paints[0]++;
+		}
+	});
+	canvas.setData("org.eclipse.swt.internal.gtk.coalesceEvents", Boolean.TRUE);
+	canvas.setSize(100, 100);
+	shell.open();
+	canvas.update();
+	while (display.readAndDispatch()) {}
+
+	int coalesced = ((int[])display.getData("org.eclipse.swt.internal.gtk.coalescedEvents"))[1];
+	paints[0] = 0;
+	canvas.redraw(10, 10, 20, 20, false);
+	canvas.redraw();
+	canvas.redraw();
+	canvas.redraw(30, 30, 10, 10, false);
+	canvas.update();
+	assertEquals(1, paints[0]);
+	assertEquals(coalesced + 2, ((int[])display.getData("org.eclipse.swt.internal.gtk.coalescedEvents"))[1]);
+
+	/* The area which was painted is not merged again */
+	canvas.redraw();
+	canvas.update();
+	assertEquals(2, paints[0]);
+	assertEquals(coalesced + 2, ((int[])display.getData("org.eclipse.swt.internal.gtk.coalescedEvents"))[1]);
+}
+
 public void test_scrollIIIIIIZ() {
 	canvas.scroll(100, 100, 0, 0, 50, 50, false);
 	canvas.scroll(100, 100, 0, 0, 50, 50, true);
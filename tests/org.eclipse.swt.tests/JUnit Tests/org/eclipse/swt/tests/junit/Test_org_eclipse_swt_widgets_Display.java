@@ -14,11 +14,13 @@ import static org.eclipse.swt.tests.junit.SwtTestUtil.assertSWTProblem;
 import junit.framework.TestCase;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
 import org.eclipse.swt.graphics.DeviceData;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.AsyncResult;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
@@ -118,6 +120,49 @@ public void test_addListenerILorg_eclipse_swt_widgets_Listener() {
 	assertTrue(":c:", callbackReceived[CLOSE_CALLBACK]);
 }
 
+public void test_asyncExecLjava_lang_ObjectLjava_lang_Runnable() {
+	final Display display = new Display();
+	try {
+		try {
+			display.asyncExec("key", null);
+			fail("No exception thrown for runnable == null");
+		} catch (IllegalArgumentException e) {
+			assertSWTProblem("Incorrect exception thrown for runnable == null", SWT.ERROR_NULL_ARGUMENT, e);
+		}
+
+		final StringBuffer buffer = new StringBuffer();
+		class Append implements Runnable {
+			String text;
+			Append(String text) {
+				this.text = text;
+			}
+			public void run() {
+				buffer.append(text);
+			}
+		}
+		Synchronizer synchronizer = display.getSynchronizer();
+		long mergeCount = synchronizer.getMergeCount();
+		display.asyncExec("a", new Append("a1"));
+		display.asyncExec(new Append("b"));
+		display.asyncExec("a", new Append("a2"));
+		display.asyncExec(null, new Append("c"));
+		display.asyncExec(null, new Append("d"));
+		display.asyncExec(new String("a"), new Append("a3"));
+		assertEquals(4, synchronizer.getMessageCount());
+		assertEquals(mergeCount + 2, synchronizer.getMergeCount());
+		while (display.readAndDispatch()) {}
+		assertEquals("a3bcd", buffer.toString());
+
+		/* A key can be used again once its runnable has run */
+		display.asyncExec("a", new Append("a4"));
+		while (display.readAndDispatch()) {}
+		assertEquals("a3bcda4", buffer.toString());
+		assertEquals(mergeCount + 2, synchronizer.getMergeCount());
+	} finally {
+		display.dispose();
+	}
+}
+
 public void test_asyncExecLjava_lang_Runnable() {
 	final Display display = new Display();
 	try {
@@ -131,6 +176,93 @@ public void test_asyncExecLjava_lang_Runnable() {
 	}
 }
 
+public void test_asyncExecLjava_lang_Runnable_asyncResult() {
+	final Display display = new Display();
+	try {
+		final int[] count = new int[1];
+		AsyncResult result = new AsyncResult() {
+			@Override
+			protected Object call() {
+				return new Integer(++count[0]);
+			}
+		};
+		AsyncResult failure = new AsyncResult() {
+			@Override
+			protected Object call() throws Exception {
+				throw new java.io.IOException();
+			}
+		};
+		AsyncResult cancelled = new AsyncResult() {
+			@Override
+			protected Object call() {
+				fail("Cancelled result was computed");
+				return null;
+			}
+		};
+		display.asyncExec(result);
+		display.asyncExec(failure);
+		display.asyncExec(cancelled);
+		assertFalse(result.isDone());
+		assertEquals(-1, result.getQueueTime());
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertTrue(cancelled.isDone());
+		assertNull(cancelled.get());
+
+		/* The user-interface thread computes the result when it asks for it */
+		assertEquals(new Integer(1), result.get());
+		assertTrue(result.isDone());
+		assertTrue(result.getQueueTime() >= 0);
+		while (display.readAndDispatch()) {}
+		assertEquals(1, count[0]);
+		try {
+			failure.get();
+			fail("No exception thrown for failed result");
+		} catch (SWTException e) {
+			assertEquals(SWT.ERROR_FAILED_EXEC, e.code);
+			assertTrue(e.throwable instanceof java.io.IOException);
+		}
+		assertFalse(result.isCancelled());
+	} finally {
+		display.dispose();
+	}
+
+	/* Disposing the display cancels the results that have not run */
+	Display disposed = new Display();
+	AsyncResult pending = new AsyncResult() {
+		@Override
+		protected Object call() {
+			return this;
+		}
+	};
+	disposed.asyncExec(pending);
+	disposed.dispose();
+	assertTrue(pending.isCancelled());
+	assertNull(pending.get(10));
+
+	/* The user-interface thread cannot wait for a result which is not queued */
+	Display unqueued = new Display();
+	try {
+		AsyncResult result = new AsyncResult() {
+			@Override
+			protected Object call() {
+				return this;
+			}
+		};
+		try {
+			result.get();
+			fail("No exception thrown for result which is not queued");
+		} catch (SWTException e) {
+			assertEquals(SWT.ERROR_THREAD_INVALID_ACCESS, e.code);
+		}
+		assertFalse(result.isDone());
+		unqueued.asyncExec(result);
+		assertSame(result, result.get());
+	} finally {
+		unqueued.dispose();
+	}
+}
+
 public void test_asyncExecLjava_lang_Runnable_dispose() {
 	final Display display = new Display();
 	try {
@@ -148,6 +280,48 @@ public void test_asyncExecLjava_lang_Runnable_dispose() {
 	}
 }
 
+public void test_asyncExecLjava_lang_Runnable_drainLimits() {
+	final Display display = new Display();
+	try {
+		Synchronizer synchronizer = display.getSynchronizer();
+		assertEquals(1, synchronizer.getDrainCountLimit());
+		assertEquals(0, synchronizer.getDrainTimeLimit());
+		try {
+			synchronizer.setDrainLimits(0, 0);
+			fail("No exception thrown for count < 1");
+		} catch (IllegalArgumentException e) {
+			assertSWTProblem("Incorrect exception thrown for count < 1", SWT.ERROR_INVALID_ARGUMENT, e);
+		}
+		try {
+			synchronizer.setDrainLimits(1, -1);
+			fail("No exception thrown for time < 0");
+		} catch (IllegalArgumentException e) {
+			assertSWTProblem("Incorrect exception thrown for time < 0", SWT.ERROR_INVALID_ARGUMENT, e);
+		}
+
+		synchronizer.setDrainLimits(5, 0);
+		final int[] count = new int[1];
+		long runCount = synchronizer.getRunCount();
+		for (int i = 0; i < 10; i++) {
+			display.asyncExec(new Runnable() {
+				public void run() {
+					count[0]++;
+				}
+			});
+		}
+		assertEquals(10, synchronizer.getMessageCount());
+		while (count[0] < 10) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		assertEquals(0, synchronizer.getMessageCount());
+		assertEquals(runCount + 10, synchronizer.getRunCount());
+		assertEquals(5, synchronizer.getLastDrainCount());
+		assertTrue(synchronizer.getLastDrainLatency() >= 0);
+	} finally {
+		display.dispose();
+	}
+}
+
 public void test_beep() {
 	Display display = new Display();
 	try {
@@ -1165,6 +1339,56 @@ public void test_setDataLjava_lang_StringLjava_lang_Object() {
 	}
 }
 
+public void test_setDataLjava_lang_StringLjava_lang_Object_reuseEvents() {
+	if (!SwtTestUtil.isGTK) return;
+	String[] keys = {"org.eclipse.swt.internal.gtk.reuseEvents", "org.eclipse.swt.internal.gtk.debugEvents"};
+	Display display = new Display();
+	try {
+		for (int i = 0; i < keys.length; i++) {
+			try {
+				display.setData(keys[i], "true");
+				fail("No exception thrown for " + keys[i] + " which is not a Boolean");
+			} catch (IllegalArgumentException e) {
+				assertSWTProblem("Incorrect exception thrown for " + keys[i] + " which is not a Boolean", SWT.ERROR_INVALID_ARGUMENT, e);
+			}
+			assertEquals(Boolean.FALSE, display.getData(keys[i]));
+			display.setData(keys[i], Boolean.TRUE);
+			assertEquals(Boolean.TRUE, display.getData(keys[i]));
+		}
+
+		/* An event kept by a listener is not mistaken for the event it was sent */
+		final Event[] kept = new Event[1];
+		Shell shell = new Shell(display);
+		shell.addListener(SWT.Paint, new Listener() {
+			public void handleEvent(Event event) {
+				kept[0] = event;
+			}
+		});
+		shell.setSize(100, 100);
+		shell.open();
+		shell.redraw();
+		long timeout = System.currentTimeMillis() + 10000;
+		while (kept[0] == null && System.currentTimeMillis() < timeout) {
+			if (!display.readAndDispatch()) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {}
+			}
+		}
+		assertNotNull("Paint listener was not called", kept[0]);
+		assertNull(kept[0].widget);
+		assertNull(kept[0].display);
+		assertEquals(-1, kept[0].type);
+		shell.dispose();
+		for (int i = 0; i < keys.length; i++) {
+			display.setData(keys[i], null);
+			assertEquals(Boolean.FALSE, display.getData(keys[i]));
+		}
+	} finally {
+		display.dispose();
+	}
+}
+
 public void test_setSynchronizerLorg_eclipse_swt_widgets_Synchronizer() {
 	final Display display = new Display();
 	final boolean[] asyncExecRan = new boolean[] {false};
@@ -1328,6 +1552,171 @@ public void test_timerExecILjava_lang_Runnable() {
 	}
 }
 
+public void test_timerExecILjava_lang_Runnable_order() {
+	final Display display = new Display();
+	try {
+		final StringBuffer order = new StringBuffer();
+		final int[] count = new int[] {0};
+		display.timerExec(300, new Runnable() {
+			public void run() {
+				order.append('c');
+				count[0]++;
+			}
+		});
+		display.timerExec(100, new Runnable() {
+			public void run() {
+				order.append('a');
+				count[0]++;
+			}
+		});
+		display.timerExec(200, new Runnable() {
+			public void run() {
+				order.append('b');
+				count[0]++;
+			}
+		});
+		Runnable cancelled = new Runnable() {
+			public void run() {
+				order.append('x');
+				count[0]++;
+			}
+		};
+		display.timerExec(150, cancelled);
+		display.timerExec(-1, cancelled);
+		long timeout = System.currentTimeMillis() + 10000;
+		while (count[0] < 3 && System.currentTimeMillis() < timeout) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		assertEquals("abc", order.toString());
+	} finally {
+		display.dispose();
+	}
+}
+
+public void test_timerExecILjava_lang_Runnable_rearm() {
+	final Display display = new Display();
+	try {
+		final int[] count = new int[] {0};
+		Runnable runnable = new Runnable() {
+			public void run() {
+				/* Scheduling the running runnable again arms it once more */
+				if (++count[0] < 3) display.timerExec(10, this);
+			}
+		};
+		display.timerExec(10, runnable);
+		/* Scheduling a pending runnable replaces its delay */
+		display.timerExec(50, runnable);
+		long timeout = System.currentTimeMillis() + 10000;
+		while (count[0] < 3 && System.currentTimeMillis() < timeout) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		assertEquals(3, count[0]);
+		for (int i = 0; i < 10; i++) display.readAndDispatch();
+		assertEquals(3, count[0]);
+	} finally {
+		display.dispose();
+	}
+}
+
+public void test_timerExecILjava_lang_Runnable_throws() {
+	final Display display = new Display();
+	try {
+		final boolean[] ran = new boolean[] {false};
+		display.timerExec(10, new Runnable() {
+			public void run() {
+				throw new IllegalStateException();
+			}
+		});
+		display.timerExec(200, new Runnable() {
+			public void run() {
+				ran[0] = true;
+			}
+		});
+		boolean thrown = false;
+		long timeout = System.currentTimeMillis() + 10000;
+		while (!ran[0] && System.currentTimeMillis() < timeout) {
+			try {
+				if (!display.readAndDispatch()) display.sleep();
+			} catch (IllegalStateException e) {
+				thrown = true;
+			}
+		}
+		assertTrue("runnable did not throw", thrown);
+		assertTrue("timer did not run after a runnable threw", ran[0]);
+	} finally {
+		display.dispose();
+	}
+}
+
+public void test_timerExecILjava_lang_Runnable_nested() {
+	final Display display = new Display();
+	try {
+		final boolean[] ran = new boolean[] {false, false};
+		display.timerExec(10, new Runnable() {
+			public void run() {
+				/* Other timers run while a runnable runs an event loop */
+				long timeout = System.currentTimeMillis() + 10000;
+				while (!ran[1] && System.currentTimeMillis() < timeout) {
+					if (!display.readAndDispatch()) display.sleep();
+				}
+				ran[0] = true;
+			}
+		});
+		display.timerExec(200, new Runnable() {
+			public void run() {
+				ran[1] = true;
+			}
+		});
+		long timeout = System.currentTimeMillis() + 20000;
+		while (!ran[0] && System.currentTimeMillis() < timeout) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		assertTrue("timer did not run", ran[0]);
+		assertTrue("timer did not run in a nested event loop", ran[1]);
+	} finally {
+		display.dispose();
+	}
+}
+
+public void test_timerExecILjava_lang_Runnable_tolerance() {
+	if (!SwtTestUtil.isGTK) return;
+	final String key = "org.eclipse.swt.internal.gtk.timerTolerance";
+	final Display display = new Display();
+	try {
+		try {
+			display.setData(key, "50");
+			fail("No exception thrown for a tolerance which is not an Integer");
+		} catch (IllegalArgumentException e) {
+			assertSWTProblem("Incorrect exception thrown for a tolerance which is not an Integer", SWT.ERROR_INVALID_ARGUMENT, e);
+		}
+		display.setData(key, new Integer(50));
+		assertEquals(new Integer(50), display.getData(key));
+
+		/* Timers which are due in the same tolerance still run in order */
+		final StringBuffer order = new StringBuffer();
+		display.timerExec(30, new Runnable() {
+			public void run() {
+				order.append('b');
+			}
+		});
+		display.timerExec(10, new Runnable() {
+			public void run() {
+				order.append('a');
+			}
+		});
+		long timeout = System.currentTimeMillis() + 10000;
+		while (order.length() < 2 && System.currentTimeMillis() < timeout) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		assertEquals("ab", order.toString());
+
+		display.setData(key, null);
+		assertEquals(new Integer(0), display.getData(key));
+	} finally {
+		display.dispose();
+	}
+}
+
 public void test_update() {
 	Display display = new Display();
 	try {
@@ -1372,6 +1761,14 @@ public void test_getFontListLjava_lang_StringZ() {
 		FontData[] scalable = display.getFontList(null, true);
 		FontData[] non_scalable = display.getFontList(null, false);
 		assertTrue("no fonts detected", (scalable.length + non_scalable.length) > 0);
+
+		/* The font data answered can be changed */
+		if (scalable.length > 0) {
+			String name = scalable[0].getName();
+			scalable[0].setName("Changed");
+			assertEquals(name, display.getFontList(null, true)[0].getName());
+			assertTrue(display.getFontList(name, true).length > 0);
+		}
 	} finally {
 		display.dispose();
 	}
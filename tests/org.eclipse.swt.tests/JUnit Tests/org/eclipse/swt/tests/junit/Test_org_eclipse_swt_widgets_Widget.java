@@ -102,6 +102,104 @@ public void test_notifyListenersILorg_eclipse_swt_widgets_Event() {
 	if (gc != null) gc.dispose();
 }
 @Test
+public void test_notifyListenersILorg_eclipse_swt_widgets_Event_hookDuringDispatch() {
+	final StringBuffer order = new StringBuffer();
+	final Listener c = new Listener() {
+		public void handleEvent(Event e) {
+			order.append('c');
+		}
+	};
+	widget.addListener(SWT.Selection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append('a');
+			if (order.length() == 1) widget.addListener(SWT.Selection, c);
+		}
+	});
+	widget.addListener(SWT.Selection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append('b');
+		}
+	});
+	/* A listener hooked during dispatch is notified after the others */
+	widget.notifyListeners(SWT.Selection, new Event());
+	assertEquals("abc", order.toString());
+	widget.notifyListeners(SWT.Selection, new Event());
+	assertEquals("abcabc", order.toString());
+}
+@Test
+public void test_notifyListenersILorg_eclipse_swt_widgets_Event_unhookDuringDispatch() {
+	final StringBuffer order = new StringBuffer();
+	final Listener b = new Listener() {
+		public void handleEvent(Event e) {
+			order.append('b');
+		}
+	};
+	widget.addListener(SWT.Selection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append('a');
+			widget.removeListener(SWT.Selection, b);
+			widget.removeListener(SWT.Selection, this);
+		}
+	});
+	widget.addListener(SWT.Selection, b);
+	widget.addListener(SWT.Selection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append('c');
+		}
+	});
+	/* A listener unhooked during dispatch is not notified, the ones after it are */
+	widget.notifyListeners(SWT.Selection, new Event());
+	assertEquals("ac", order.toString());
+	widget.notifyListeners(SWT.Selection, new Event());
+	assertEquals("acc", order.toString());
+}
+@Test
+public void test_notifyListenersILorg_eclipse_swt_widgets_Event_typeChangedDuringDispatch() {
+	final StringBuffer order = new StringBuffer();
+	widget.addListener(SWT.Selection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append("s1 ");
+		}
+	});
+	widget.addListener(SWT.DefaultSelection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append("d1 ");
+		}
+	});
+	widget.addListener(SWT.Selection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append("s2 ");
+			e.type = SWT.DefaultSelection;
+		}
+	});
+	widget.addListener(SWT.Selection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append("s3 ");
+		}
+	});
+	widget.addListener(SWT.DefaultSelection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append("d2 ");
+			e.type = SWT.None;
+		}
+	});
+	widget.addListener(SWT.DefaultSelection, new Listener() {
+		public void handleEvent(Event e) {
+			order.append("d3 ");
+		}
+	});
+	/*
+	* When a listener changes the type of the event, the listeners of
+	* the new type hooked after it are notified, and SWT.None stops
+	* the dispatch.
+	*/
+	widget.notifyListeners(SWT.Selection, new Event());
+	assertEquals("s1 s2 d2 ", order.toString());
+	order.setLength(0);
+	widget.notifyListeners(SWT.DefaultSelection, new Event());
+	assertEquals("d1 d2 ", order.toString());
+}
+@Test
 public void test_removeListenerILorg_eclipse_swt_widgets_Listener() {
 	// this method is further tested by all of the removeTypedListener tests
 	try {
@@ -140,6 +238,59 @@ public void test_setDataLjava_lang_StringLjava_lang_Object() {
 	assertNull(widget.getData("the widget"));
 }
 @Test
+public void test_setDataLjava_lang_StringLjava_lang_Object_manyKeys() {
+	/* "Aa" and "BB" have the same hash code */
+	String[] keys = new String[20];
+	keys[0] = "Aa";
+	keys[1] = "BB";
+	for (int i = 2; i < keys.length; i++) {
+		keys[i] = "key" + i;
+	}
+	Object[] values = new Object[keys.length];
+	Object data = "data";
+	widget.setData(data);
+
+	/* More keys than are kept in the compact table */
+	for (int i = 0; i < keys.length; i++) {
+		values[i] = "value" + i;
+		widget.setData(keys[i], values[i]);
+		assertSame(data, widget.getData());
+		for (int j = 0; j < keys.length; j++) {
+			assertEquals(keys[j], values[j], widget.getData(keys[j]));
+		}
+	}
+	assertNull(widget.getData("missing"));
+
+	/* Overwrite some of the keys */
+	for (int i = 0; i < keys.length; i += 3) {
+		values[i] = "new value" + i;
+		widget.setData(keys[i], values[i]);
+	}
+	data = "new data";
+	widget.setData(data);
+	for (int j = 0; j < keys.length; j++) {
+		assertEquals(keys[j], values[j], widget.getData(keys[j]));
+	}
+
+	/* Remove keys until the compact table is used again */
+	for (int i = 0; i < keys.length - 3; i++) {
+		widget.setData(keys[i], null);
+		values[i] = null;
+		assertSame(data, widget.getData());
+		for (int j = 0; j < keys.length; j++) {
+			assertEquals(keys[j], values[j], widget.getData(keys[j]));
+		}
+	}
+	widget.setData(null);
+	assertNull(widget.getData());
+	for (int j = keys.length - 3; j < keys.length; j++) {
+		assertEquals(keys[j], values[j], widget.getData(keys[j]));
+		widget.setData(keys[j], null);
+		assertNull(widget.getData(keys[j]));
+	}
+	assertNull(widget.getData());
+}
+@Test
 public void test_toString() {
 	assertNotNull(widget.toString());
 	assertTrue(widget.toString().length() > 0);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2015 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.swt.tests.junit.performance;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
 import junit.framework.*;
 import junit.textui.*;
 
@@ -382,6 +385,460 @@ public void test_fastStringDrawing() {
 	disposeMeter(meter);
 }
 
+public void test_pngEncoding() {
+	ImageData[] images = {createScreenshotImageData(800, 600), createPhotographicImageData(800, 600)};
+	String[] imageNames = {"screenshot", "photographic"};
+	int[] compressions = {1, 2, 3};
+	String[] compressionNames = {"fast", "balanced", "smallest"};
+	for (int i = 0; i < images.length; i++) {
+		for (int j = 0; j < compressions.length; j++) {
+			PerformanceMeter meter = createMeterWithoutSummary("Encode " + imageNames[i] + " PNG (" + compressionNames[j] + ")");
+			ImageLoader loader = new ImageLoader();
+			loader.data = new ImageData[] {images[i]};
+			loader.compression = compressions[j];
+			int size = 0;
+			for (int samples = 0; samples < 10; samples++) {
+				ByteArrayOutputStream stream = new ByteArrayOutputStream();
+				meter.start();
+				for (int k = 0; k < 5; k++) {
+					stream.reset();
+					loader.save(stream, SWT.IMAGE_PNG);
+				}
+				meter.stop();
+				size = stream.size();
+			}
+			disposeMeter(meter);
+			if (verbose) {
+				System.out.println(imageNames[i] + " PNG (" + compressionNames[j] + "): " + size + " bytes");
+			}
+		}
+	}
+}
+
+public void test_gifEncoding() {
+	ImageData[] images = {createIndexedImageData(createScreenshotImageData(1600, 1200)), createIndexedImageData(createPhotographicImageData(1600, 1200))};
+	String[] imageNames = {"screenshot", "photographic"};
+	for (int i = 0; i < images.length; i++) {
+		PerformanceMeter meter = createMeterWithoutSummary("Encode " + imageNames[i] + " GIF");
+		ImageLoader loader = new ImageLoader();
+		loader.data = new ImageData[] {images[i]};
+		int size = 0;
+		for (int samples = 0; samples < 10; samples++) {
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			meter.start();
+			for (int k = 0; k < 5; k++) {
+				stream.reset();
+				loader.save(stream, SWT.IMAGE_GIF);
+			}
+			meter.stop();
+			size = stream.size();
+		}
+		disposeMeter(meter);
+		if (verbose) {
+			System.out.println(imageNames[i] + " GIF: " + size + " bytes");
+		}
+	}
+}
+
+public void test_imageResampling() {
+	ImageData image = createPhotographicImageData(800, 600);
+	int[][] sizes = {{200, 150}, {1600, 1200}};
+	String[] sizeNames = {"down", "up"};
+	int[] filters = {SWT.NONE, SWT.FILTER_BOX, SWT.FILTER_BILINEAR, SWT.FILTER_BICUBIC, SWT.FILTER_LANCZOS};
+	String[] filterNames = {"nearest", "box", "bilinear", "bicubic", "lanczos"};
+	for (int i = 0; i < sizes.length; i++) {
+		for (int j = 0; j < filters.length; j++) {
+			PerformanceMeter meter = createMeterWithoutSummary("Scale image " + sizeNames[i] + " (" + filterNames[j] + ")");
+			for (int samples = 0; samples < 10; samples++) {
+				meter.start();
+				image.scaledTo(sizes[i][0], sizes[i][1], filters[j]);
+				meter.stop();
+			}
+			disposeMeter(meter);
+		}
+	}
+}
+
+public void test_imageCreation() {
+	ImageData opaque = createPhotographicImageData(32, 32);
+	ImageData alpha = createPhotographicImageData(32, 32);
+	alpha.alphaData = new byte[alpha.width * alpha.height];
+	for (int i = 0; i < alpha.alphaData.length; i++) {
+		alpha.alphaData[i] = (byte)(i * 7);
+	}
+	RGB[] rgbs = new RGB[256];
+	for (int i = 0; i < rgbs.length; i++) {
+		rgbs[i] = new RGB(i, 255 - i, (i * 3) & 0xFF);
+	}
+	ImageData indexed = new ImageData(32, 32, 8, new PaletteData(rgbs));
+	for (int i = 0; i < indexed.data.length; i++) {
+		indexed.data[i] = (byte)(i * 13);
+	}
+	indexed.transparentPixel = 0;
+	ImageData[] images = {opaque, alpha, indexed};
+	String[] imageNames = {"RGB", "RGB with alpha", "indexed with transparent pixel"};
+	for (int i = 0; i < images.length; i++) {
+		PerformanceMeter meter = createMeterWithoutSummary("Create " + imageNames[i] + " images");
+		for (int samples = 0; samples < 10; samples++) {
+			meter.start();
+			for (int j = 0; j < 500; j++) {
+				new Image(display, images[i]).dispose();
+			}
+			meter.stop();
+		}
+		disposeMeter(meter);
+	}
+}
+
+public void test_eventListeners() {
+	int[] types = {SWT.MouseDown, SWT.MouseUp, SWT.MouseMove, SWT.MouseEnter, SWT.MouseExit,
+		SWT.KeyDown, SWT.KeyUp, SWT.Paint, SWT.Resize, SWT.FocusIn, SWT.FocusOut, SWT.MouseWheel};
+	Listener[] listeners = new Listener[types.length * 3];
+	final int[] count = new int[1];
+	for (int i = 0; i < listeners.length; i++) {
+		listeners[i] = new Listener() {
+			public void handleEvent(Event event) {
+				count[0]++;
+			}
+		};
+	}
+	Shell shell = new Shell(display);
+	Canvas canvas = new Canvas(shell, SWT.NONE);
+
+	PerformanceMeter meter = createMeterWithoutSummary("Hook and unhook listeners");
+	for (int samples = 0; samples < 10; samples++) {
+		meter.start();
+		for (int i = 0; i < 1000; i++) {
+			for (int j = 0; j < listeners.length; j++) {
+				canvas.addListener(types[j % types.length], listeners[j]);
+			}
+			for (int j = listeners.length - 1; j >= 0; j--) {
+				canvas.removeListener(types[j % types.length], listeners[j]);
+			}
+		}
+		meter.stop();
+	}
+	disposeMeter(meter);
+
+	for (int j = 0; j < listeners.length; j++) {
+		canvas.addListener(types[j % types.length], listeners[j]);
+	}
+	meter = createMeterWithoutSummary("Check for listeners");
+	for (int samples = 0; samples < 10; samples++) {
+		meter.start();
+		for (int i = 0; i < 100000; i++) {
+			canvas.isListening(SWT.MouseMove);
+			canvas.isListening(SWT.Verify);
+		}
+		meter.stop();
+	}
+	disposeMeter(meter);
+
+	meter = createMeterWithoutSummary("Send events to listeners");
+	Event event = new Event();
+	for (int samples = 0; samples < 10; samples++) {
+		meter.start();
+		for (int i = 0; i < 100000; i++) {
+			canvas.notifyListeners(SWT.MouseMove, event);
+		}
+		meter.stop();
+	}
+	disposeMeter(meter);
+	shell.dispose();
+}
+
+public void test_asyncExecContention() {
+	final int producers = 4, messages = 20000;
+	final int[] count = new int[1];
+	final Runnable runnable = new Runnable() {
+		public void run() {
+			count[0]++;
+		}
+	};
+	PerformanceMeter meter = createMeterWithoutSummary("Run async messages from " + producers + " threads");
+	for (int samples = 0; samples < 10; samples++) {
+		count[0] = 0;
+		Thread[] threads = new Thread[producers];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < messages; j++) {
+						display.asyncExec(runnable);
+					}
+				}
+			};
+		}
+		meter.start();
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].start();
+		}
+		while (count[0] < producers * messages) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		meter.stop();
+		for (int i = 0; i < threads.length; i++) {
+			try {
+				threads[i].join();
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+	disposeMeter(meter);
+
+	meter = createMeterWithoutSummary("Run sync messages from " + producers + " threads");
+	for (int samples = 0; samples < 10; samples++) {
+		count[0] = 0;
+		Thread[] threads = new Thread[producers];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < messages / 10; j++) {
+						display.syncExec(runnable);
+					}
+				}
+			};
+		}
+		meter.start();
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].start();
+		}
+		while (count[0] < producers * messages / 10) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		meter.stop();
+		for (int i = 0; i < threads.length; i++) {
+			try {
+				threads[i].join();
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+	disposeMeter(meter);
+}
+
+public void test_timerExec() {
+	final int timers = 500;
+	final int[] count = new int[1];
+	Runnable[] runnables = new Runnable[timers];
+	for (int i = 0; i < runnables.length; i++) {
+		runnables[i] = new Runnable() {
+			public void run() {
+				count[0]++;
+			}
+		};
+	}
+	PerformanceMeter meter = createMeterWithoutSummary("Reschedule " + timers + " timers");
+	for (int samples = 0; samples < 10; samples++) {
+		meter.start();
+		for (int i = 0; i < 100; i++) {
+			for (int j = 0; j < runnables.length; j++) {
+				display.timerExec(60000 + j, runnables[j]);
+			}
+		}
+		meter.stop();
+	}
+	disposeMeter(meter);
+
+	meter = createMeterWithoutSummary("Run " + timers + " timers");
+	for (int samples = 0; samples < 10; samples++) {
+		count[0] = 0;
+		meter.start();
+		for (int j = 0; j < runnables.length; j++) {
+			display.timerExec(j % 50, runnables[j]);
+		}
+		while (count[0] < timers) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		meter.stop();
+	}
+	disposeMeter(meter);
+}
+
+public void test_widgetData() {
+	final int widgets = 500;
+	final int keys = 20;
+	String[] names = new String[keys];
+	for (int i = 0; i < names.length; i++) {
+		names[i] = "org.eclipse.swt.tests.key" + i;
+	}
+	Shell shell = new Shell(display);
+	Label[] labels = new Label[widgets];
+	for (int i = 0; i < labels.length; i++) {
+		labels[i] = new Label(shell, SWT.NONE);
+	}
+	PerformanceMeter meter = createMeterWithoutSummary("Set " + keys + " keys on " + widgets + " widgets");
+	for (int samples = 0; samples < 10; samples++) {
+		meter.start();
+		for (int i = 0; i < labels.length; i++) {
+			for (int j = 0; j < names.length; j++) {
+				labels[i].setData(names[j], names);
+			}
+		}
+		meter.stop();
+		for (int i = 0; i < labels.length; i++) {
+			for (int j = 0; j < names.length; j++) {
+				labels[i].setData(names[j], null);
+			}
+		}
+	}
+	disposeMeter(meter);
+
+	for (int i = 0; i < labels.length; i++) {
+		for (int j = 0; j < names.length; j++) {
+			labels[i].setData(names[j], names);
+		}
+	}
+	meter = createMeterWithoutSummary("Get " + keys + " keys on " + widgets + " widgets");
+	for (int samples = 0; samples < 10; samples++) {
+		meter.start();
+		for (int k = 0; k < 100; k++) {
+			for (int i = 0; i < labels.length; i++) {
+				for (int j = 0; j < names.length; j++) {
+					labels[i].getData(names[j]);
+				}
+			}
+		}
+		meter.stop();
+	}
+	disposeMeter(meter);
+	shell.dispose();
+}
+
+public void test_widgetDataMemory() {
+	final int widgets = 2000;
+	int[] keyCounts = {2, 8, 9, 20, 100};
+	Shell shell = new Shell(display);
+	Label[] labels = new Label[widgets];
+	for (int i = 0; i < labels.length; i++) {
+		labels[i] = new Label(shell, SWT.NONE);
+	}
+	for (int k = 0; k < keyCounts.length; k++) {
+		int keys = keyCounts[k];
+		String[] names = new String[keys];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "org.eclipse.swt.tests.key" + i;
+		}
+		PerformanceMeter meter = createMeterWithoutSummary("Memory of " + keys + " keys on " + widgets + " widgets");
+		long size = 0;
+		for (int samples = 0; samples < 5; samples++) {
+			long before = usedMemory();
+			meter.start();
+			for (int i = 0; i < labels.length; i++) {
+				for (int j = 0; j < names.length; j++) {
+					labels[i].setData(names[j], names);
+				}
+			}
+			meter.stop();
+			size += usedMemory() - before;
+			for (int i = 0; i < labels.length; i++) {
+				for (int j = 0; j < names.length; j++) {
+					labels[i].setData(names[j], null);
+				}
+			}
+		}
+		disposeMeter(meter);
+		size /= 5;
+		System.out.println(keys + " keys: " + size / widgets + " bytes per widget, " + size / widgets / keys + " bytes per key");
+	}
+	shell.dispose();
+}
+
+public void test_textExtent() {
+	final int strings = 2000;
+	String[] texts = new String[strings];
+	for (int i = 0; i < texts.length; i++) {
+		texts[i] = "Row " + i + " of the column text";
+	}
+	Image image = new Image(display, 100, 100);
+	GC gc = new GC(image);
+	Font font = new Font(display, "Helvetica", 10, SWT.NONE);
+	gc.setFont(font);
+	PerformanceMeter meter = createMeterWithoutSummary("Measure " + strings + " strings");
+	for (int samples = 0; samples < 10; samples++) {
+		meter.start();
+		for (int i = 0; i < texts.length; i++) {
+			gc.textExtent(texts[i]);
+			gc.stringExtent(texts[i]);
+		}
+		meter.stop();
+	}
+	disposeMeter(meter);
+	gc.dispose();
+	font.dispose();
+	image.dispose();
+}
+
+/**
+ * Answer an image resembling a screenshot: flat areas, thin
+ * borders and rows of short runs like text.
+ */
+ImageData createScreenshotImageData(int width, int height) {
+	ImageData data = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			int pixel = 0xF0F0F0;
+			if (y < 24) pixel = 0x3060A0;
+			else if (x < 200) pixel = 0xFFFFFF;
+			if (x == 200 || y == 24 || y % 120 == 0) pixel = 0xA0A0A0;
+			if (y > 24 && y % 20 < 10 && (x / 3 + y) % 7 < 3 && x % 180 < 140) pixel = 0x202020;
+			data.setPixel(x, y, pixel);
+		}
+	}
+	return data;
+}
+
+/**
+ * Answer an image resembling a photograph: smooth gradients
+ * with a small amount of noise in every pixel.
+ */
+ImageData createPhotographicImageData(int width, int height) {
+	ImageData data = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	Random random = new Random(0);
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			int red = Math.min(255, x * 255 / width + random.nextInt(8));
+			int green = Math.min(255, y * 255 / height + random.nextInt(8));
+			int blue = Math.min(255, (x + y) * 255 / (width + height) + random.nextInt(8));
+			data.setPixel(x, y, (red << 16) | (green << 8) | blue);
+		}
+	}
+	return data;
+}
+
+/**
+ * Answer an 8-bit copy of a direct image, using a palette
+ * of 3 bits of red, 3 bits of green and 2 bits of blue.
+ */
+ImageData createIndexedImageData(ImageData source) {
+	RGB[] rgbs = new RGB[256];
+	for (int i = 0; i < rgbs.length; i++) {
+		rgbs[i] = new RGB((i >> 5) * 255 / 7, ((i >> 2) & 0x7) * 255 / 7, (i & 0x3) * 255 / 3);
+	}
+	ImageData data = new ImageData(source.width, source.height, 8, new PaletteData(rgbs));
+	for (int y = 0; y < source.height; y++) {
+		for (int x = 0; x < source.width; x++) {
+			int pixel = source.getPixel(x, y);
+			data.setPixel(x, y, ((pixel >> 16) & 0xE0) | ((pixel >> 11) & 0x1C) | ((pixel >> 6) & 0x3));
+		}
+	}
+	return data;
+}
+
+/**
+ * Answer the number of bytes used in the heap, after
+ * collecting the garbage.
+ */
+long usedMemory() {
+	Runtime runtime = Runtime.getRuntime();
+	for (int i = 0; i < 4; i++) {
+		System.gc();
+		System.runFinalization();
+	}
+	return runtime.totalMemory() - runtime.freeMemory();
+}
+
 public static Test suite() {
 	TestSuite suite = new TestSuite();
 	java.util.Vector<String> methodNames = methodNames();
@@ -400,6 +857,16 @@ public static java.util.Vector<String> methodNames() {
 	methodNames.addElement("test_stringDrawing");
 	methodNames.addElement("test_fastStringDrawing");
 	methodNames.addElement("test_layout");
+	methodNames.addElement("test_pngEncoding");
+	methodNames.addElement("test_gifEncoding");
+	methodNames.addElement("test_imageResampling");
+	methodNames.addElement("test_imageCreation");
+	methodNames.addElement("test_eventListeners");
+	methodNames.addElement("test_asyncExecContention");
+	methodNames.addElement("test_timerExec");
+	methodNames.addElement("test_widgetData");
+	methodNames.addElement("test_widgetDataMemory");
+	methodNames.addElement("test_textExtent");
 	return methodNames;
 }
 @Override
@@ -411,6 +878,16 @@ protected void runTest() throws Throwable {
 	else if (getName().equals("test_windowDrawing")) test_windowDrawing();
 	else if (getName().equals("test_stringDrawing")) test_stringDrawing();
 	else if (getName().equals("test_fastStringDrawing")) test_fastStringDrawing();
+	else if (getName().equals("test_pngEncoding")) test_pngEncoding();
+	else if (getName().equals("test_gifEncoding")) test_gifEncoding();
+	else if (getName().equals("test_imageResampling")) test_imageResampling();
+	else if (getName().equals("test_imageCreation")) test_imageCreation();
+	else if (getName().equals("test_eventListeners")) test_eventListeners();
+	else if (getName().equals("test_asyncExecContention")) test_asyncExecContention();
+	else if (getName().equals("test_timerExec")) test_timerExec();
+	else if (getName().equals("test_widgetData")) test_widgetData();
+	else if (getName().equals("test_widgetDataMemory")) test_widgetDataMemory();
+	else if (getName().equals("test_textExtent")) test_textExtent();
 }
 
 /* custom */